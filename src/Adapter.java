@@ -1,11 +1,13 @@
 
 public class Adapter {
 	public String str;
+	public String reversedStr; //for 3' adapters, which are matched against the reversed read
 	public boolean isStart;
 	public boolean anchored;
 	
 	public Adapter(String str, boolean isStart, boolean anchored){
 		this.str = str;
+		this.reversedStr = UtilMethods.reverse(str);
 		this.isStart = isStart;
 		this.anchored = anchored;
 	}
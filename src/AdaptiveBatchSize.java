@@ -0,0 +1,223 @@
+import java.util.ArrayList;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+public class AdaptiveBatchSize{
+	//chooses the number of reads in each batch that ReadSpliterator splits off, while the reads are being processed
+	//batches are timed, so the batch size can be set to make each batch take about a target amount of time
+	//if the workers spend a lot of time between batches (waiting for reads to be split off), then the target time is raised
+	//the batch size is also capped, so the reads in flight do not use too much memory
+	private static final long MIN_TARGET_NANOS = 5000000L; //5 ms per batch
+	private static final long MAX_TARGET_NANOS = 80000000L;
+	private static final double MAX_IDLE = 0.25; //max fraction of time between batches
+	private static final double SMOOTHING = 0.3; //weight of the newest measurements
+	private static final double MIN_CHANGE = 0.25; //relative change needed before the batch size is changed
+	private static final int MIN_SIZE = 16;
+	private static final int MAX_SIZE = 65536;
+	private static final int MAX_IN_FLIGHT = 262144; //max reads in all batches that are being processed
+	private static final int MAX_HISTORY = 32;
+	
+	private volatile int size;
+	private int maxSize;
+	private int adjustInterval; //number of batches between adjustments
+	private long targetNanos = MIN_TARGET_NANOS;
+	private double nanosPerRead = -1.0; //smoothed measurements
+	private double idle = 0.0;
+	
+	private ThreadLocal<long[]> lastEnd = ThreadLocal.withInitial(() -> new long[1]);
+	private ThreadLocal<Deferred> deferred = ThreadLocal.withInitial(() -> new Deferred());
+	private int windowBatches = 0;
+	private long windowReads = 0;
+	private long windowNanos = 0;
+	private long windowIdle = 0;
+	
+	private long totalBatches = 0;
+	private long totalNanos = 0;
+	private long totalIdle = 0;
+	private int minChosen, maxChosen;
+	private ArrayList<Integer> history = new ArrayList<Integer>();
+	
+	public AdaptiveBatchSize(int initialSize, int threads){
+		this.maxSize = Math.max(MIN_SIZE, Math.min(MAX_SIZE, MAX_IN_FLIGHT / (threads * 2)));
+		this.size = Math.max(MIN_SIZE, Math.min(initialSize, maxSize));
+		this.adjustInterval = threads;
+		this.minChosen = size;
+		this.maxChosen = size;
+		this.history.add(size);
+	}
+	
+	public int size(){
+		return size;
+	}
+	
+	//wraps a batch so it is timed when it is processed
+	public <T> Spliterator<T> wrap(Spliterator<T> batch, int reads){
+		return new TimedBatch<T>(batch, reads);
+	}
+	
+	//while a thread is taking reads to process them together, the batches that run out are only done after those reads are processed
+	//otherwise, the time spent processing the last reads of a batch would be counted as time between batches
+	public void deferEnds(){
+		deferred.get().on = true;
+	}
+	
+	public void endDeferred(){
+		Deferred d = deferred.get();
+		d.on = false;
+		if(d.batches.isEmpty())
+			return;
+		long end = System.nanoTime();
+		for(TimedBatch<?> batch : d.batches)
+			batchDone(batch.reads, batch.start, end);
+		d.batches.clear();
+	}
+	
+	private void batchStarted(long start){
+		long[] end = lastEnd.get();
+		if(end[0] != 0){
+			synchronized(this){
+				windowIdle += start - end[0];
+			}
+		}
+	}
+	
+	private synchronized void batchDone(int reads, long start, long end){
+		lastEnd.get()[0] = end;
+		windowBatches++;
+		windowReads += reads;
+		windowNanos += end - start;
+		totalBatches++;
+		totalNanos += end - start;
+		
+		if(windowBatches < adjustInterval || windowReads == 0)
+			return;
+		
+		double currNanosPerRead = Math.max((double)windowNanos / windowReads, 1.0);
+		double currIdle = (double)windowIdle / (windowIdle + windowNanos);
+		nanosPerRead = nanosPerRead < 0.0 ? currNanosPerRead : SMOOTHING * currNanosPerRead + (1.0 - SMOOTHING) * nanosPerRead;
+		idle = SMOOTHING * currIdle + (1.0 - SMOOTHING) * idle;
+		
+		if(idle > MAX_IDLE)
+			targetNanos = Math.min(targetNanos * 2, MAX_TARGET_NANOS);
+		else if(idle < MAX_IDLE / 2)
+			targetNanos = Math.max(targetNanos / 2, MIN_TARGET_NANOS);
+		
+		//do not change too quickly, since the measurements are noisy
+		long next = (long)(targetNanos / nanosPerRead);
+		next = Math.max(size / 2, Math.min((long)size * 2, next));
+		next = Math.max(MIN_SIZE, Math.min(maxSize, next));
+		
+		if(Math.abs(next - size) > size * MIN_CHANGE){
+			size = (int)next;
+			minChosen = Math.min(minChosen, size);
+			maxChosen = Math.max(maxChosen, size);
+			if(history.size() < MAX_HISTORY)
+				history.add(size);
+		}
+		
+		totalIdle += windowIdle;
+		windowBatches = 0;
+		windowReads = 0;
+		windowNanos = 0;
+		windowIdle = 0;
+	}
+	
+	public synchronized String history(){
+		StringBuilder builder = new StringBuilder();
+		for(int i = 0; i < history.size(); i++){
+			if(i > 0)
+				builder.append(" -> ");
+			builder.append(history.get(i));
+		}
+		if(history.size() == MAX_HISTORY)
+			builder.append(" -> ...");
+		return builder.toString();
+	}
+	
+	public synchronized int finalSize(){
+		return size;
+	}
+	
+	public synchronized int minSize(){
+		return minChosen;
+	}
+	
+	public synchronized int maxSize(){
+		return maxChosen;
+	}
+	
+	public synchronized double averageBatchMillis(){
+		return totalBatches == 0 ? 0.0 : (double)totalNanos / totalBatches / 1000000.0;
+	}
+	
+	public synchronized double idleFraction(){
+		long idle = totalIdle + windowIdle;
+		long nanos = totalNanos;
+		return idle + nanos == 0 ? 0.0 : (double)idle / (idle + nanos);
+	}
+	
+	private class TimedBatch<T> implements Spliterator<T>{
+		private Spliterator<T> batch;
+		private int reads;
+		private long start = 0;
+		private boolean done = false;
+		
+		public TimedBatch(Spliterator<T> batch, int reads){
+			this.batch = batch;
+			this.reads = reads;
+		}
+		
+		@Override
+		public boolean tryAdvance(Consumer<? super T> c){
+			if(start == 0){
+				start = System.nanoTime();
+				batchStarted(start);
+			}
+			if(batch.tryAdvance(c))
+				return true;
+			finish();
+			return false;
+		}
+		
+		@Override
+		public void forEachRemaining(Consumer<? super T> c){
+			if(start == 0){
+				start = System.nanoTime();
+				batchStarted(start);
+			}
+			batch.forEachRemaining(c);
+			finish();
+		}
+		
+		private void finish(){
+			if(done)
+				return;
+			done = true;
+			Deferred d = deferred.get();
+			if(d.on)
+				d.batches.add(this);
+			else
+				batchDone(reads, start, System.nanoTime());
+		}
+		
+		@Override
+		public Spliterator<T> trySplit(){
+			return null;
+		}
+		
+		@Override
+		public long estimateSize(){
+			return batch.estimateSize();
+		}
+		
+		@Override
+		public int characteristics(){
+			return batch.characteristics();
+		}
+	}
+	
+	private static class Deferred{
+		private boolean on = false;
+		private ArrayList<TimedBatch<?>> batches = new ArrayList<TimedBatch<?>>();
+	}
+}
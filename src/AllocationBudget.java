@@ -0,0 +1,89 @@
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.text.DecimalFormat;
+import java.util.concurrent.atomic.LongAdder;
+
+public class AllocationBudget{
+	//measures the bytes allocated by each processing stage, using the allocation counter of the thread that runs the stage
+	//the bytes are divided by the number of reads (or read pairs), and checked against a max for each stage
+	//this is for catching changes that make the processing allocate more per read, so it is only turned on when asked for
+	public static final int PARSE = 0, DEMULTIPLEX = 1, TRIM_N = 2, QUALITY_TRIM = 3, ADAPTERS = 4, MERGE = 5, WRITE = 6;
+	public static final String[] STAGES = {"parse", "demux", "trimN", "quality", "adapters", "merge", "write"}; //names used in the command
+	private static final String[] DESCRIPTIONS = {"Parse", "Demultiplex", "Trim N", "Quality Trim", "Remove Adapters", "Merge", "Write"};
+	private static final com.sun.management.ThreadMXBean THREAD_BEAN = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+	
+	private LongAdder[] bytes = new LongAdder[STAGES.length];
+	private LongAdder reads = new LongAdder();
+	private double[] budgets = new double[STAGES.length]; //bytes per read, negative if there is no max
+	
+	public AllocationBudget() throws Exception{
+		if(!THREAD_BEAN.isThreadAllocatedMemorySupported())
+			throw new Exception("Measuring allocated bytes is not supported by this JVM");
+		THREAD_BEAN.setThreadAllocatedMemoryEnabled(true);
+		for(int i = 0; i < STAGES.length; i++){
+			bytes[i] = new LongAdder();
+			budgets[i] = -1.0;
+		}
+	}
+	
+	//the total bytes allocated by the current thread so far
+	public static long threadBytes(){
+		return THREAD_BEAN.getCurrentThreadAllocatedBytes();
+	}
+	
+	//sets the max bytes per read for a stage, or for every stage if the stage is null
+	public void setBudget(String stage, double max) throws Exception{
+		for(int i = 0; i < STAGES.length; i++){
+			if(stage == null || STAGES[i].equals(stage)){
+				budgets[i] = max;
+				if(stage != null)
+					return;
+			}
+		}
+		if(stage != null)
+			throw new Exception("Allocation budget stage not supported: " + stage);
+	}
+	
+	//adds the bytes allocated by the current thread since the mark to a stage, and returns a new mark
+	public long charge(int stage, long mark){
+		long curr = threadBytes();
+		bytes[stage].add(curr - mark);
+		return curr;
+	}
+	
+	//adds bytes that were measured some other way, like the total of a thread that has finished
+	public void add(int stage, long b){
+		bytes[stage].add(b);
+	}
+	
+	public void addReads(long n){
+		reads.add(n);
+	}
+	
+	public double bytesPerRead(int stage){
+		long n = reads.sum();
+		return n == 0 ? 0.0 : (double)bytes[stage].sum() / n;
+	}
+	
+	public void print(PrintWriter logWriter, DecimalFormat format){
+		logWriter.println("Reads Measured for Allocation: " + format.format(reads.sum()));
+		double total = 0.0;
+		for(int i = 0; i < STAGES.length; i++){
+			double b = bytesPerRead(i);
+			total += b;
+			logWriter.println("Allocated Bytes Per Read (" + DESCRIPTIONS[i] + "): " + format.format(b) + (budgets[i] < 0.0 ? "" : " (Max: " + format.format(budgets[i]) + ")"));
+		}
+		logWriter.println("Allocated Bytes Per Read (Total): " + format.format(total));
+	}
+	
+	//throws an exception that lists every stage that allocated more than its budget
+	public void check(DecimalFormat format) throws Exception{
+		String exceeded = "";
+		for(int i = 0; i < STAGES.length; i++){
+			if(budgets[i] >= 0.0 && bytesPerRead(i) > budgets[i])
+				exceeded += (exceeded.isEmpty() ? "" : ", ") + STAGES[i] + " = " + format.format(bytesPerRead(i)) + " > " + format.format(budgets[i]);
+		}
+		if(!exceeded.isEmpty())
+			throw new Exception("Allocation budget exceeded (bytes per read): " + exceeded);
+	}
+}
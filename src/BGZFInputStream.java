@@ -0,0 +1,184 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+public class BGZFInputStream extends InputStream{
+	//decompresses BGZF files, which are gzip files made of many small gzip members that store their own size in the header
+	//the compressed blocks are read in order by the thread that reads this stream, and they are inflated in parallel on a thread pool
+	//the decompressed blocks are returned in the same order as they are in the file
+	private static final int HEADER_SIZE = 12; //gzip header up to and including XLEN
+	private static final int FOOTER_SIZE = 8; //CRC32 and ISIZE
+	
+	private InputStream in;
+	private ExecutorService pool;
+	private int maxPending; //max number of blocks that are being inflated at once
+	private ArrayDeque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+	private byte[] block = new byte[0]; //current decompressed block
+	private int blockPos = 0;
+	private boolean eof = false;
+	
+	public BGZFInputStream(InputStream in, ExecutorService pool, int maxPending){
+		this.in = in;
+		this.pool = pool;
+		this.maxPending = maxPending;
+	}
+	
+	//checks whether the first gzip member of a file has the BGZF extra field
+	public static boolean isBGZF(File file) throws IOException{
+		try(InputStream in = new FileInputStream(file)){
+			byte[] header = new byte[HEADER_SIZE];
+			if(readFully(in, header) < header.length || !isGZIPHeader(header))
+				return false;
+			byte[] extra = new byte[readShort(header, 10)];
+			if(readFully(in, extra) < extra.length)
+				return false;
+			return blockSize(extra) != -1;
+		}
+	}
+	
+	@Override
+	public int read() throws IOException{
+		while(blockPos >= block.length){
+			if(!nextBlock())
+				return -1;
+		}
+		return block[blockPos++] & 0xFF;
+	}
+	
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException{
+		if(len == 0)
+			return 0;
+		while(blockPos >= block.length){
+			if(!nextBlock())
+				return -1;
+		}
+		int n = Math.min(len, block.length - blockPos);
+		System.arraycopy(block, blockPos, b, off, n);
+		blockPos += n;
+		return n;
+	}
+	
+	@Override
+	public void close() throws IOException{
+		for(Future<byte[]> f : pending)
+			f.cancel(false);
+		pending.clear();
+		in.close();
+	}
+	
+	//keeps the thread pool busy with compressed blocks and waits for the next decompressed block in order
+	private boolean nextBlock() throws IOException{
+		while(!eof && pending.size() < maxPending){
+			byte[] compressed = readBlock();
+			if(compressed == null){
+				eof = true;
+			}else{
+				pending.add(pool.submit(() -> inflate(compressed)));
+			}
+		}
+		if(pending.isEmpty())
+			return false;
+		
+		try{
+			block = pending.poll().get();
+		}catch(ExecutionException e){
+			throw new IOException(e.getCause());
+		}catch(InterruptedException e){
+			throw new IOException(e);
+		}
+		blockPos = 0;
+		return true;
+	}
+	
+	//reads the compressed data and the footer of the next block, or returns null at the end of the file
+	private byte[] readBlock() throws IOException{
+		byte[] header = new byte[HEADER_SIZE];
+		int n = readFully(in, header);
+		if(n == 0)
+			return null;
+		if(n < header.length || !isGZIPHeader(header))
+			throw new IOException("Not a BGZF block");
+		
+		byte[] extra = new byte[readShort(header, 10)];
+		if(readFully(in, extra) < extra.length)
+			throw new IOException("Truncated BGZF block");
+		int size = blockSize(extra);
+		if(size == -1)
+			throw new IOException("Not a BGZF block");
+		
+		byte[] res = new byte[size - HEADER_SIZE - extra.length];
+		if(res.length < FOOTER_SIZE || readFully(in, res) < res.length)
+			throw new IOException("Truncated BGZF block");
+		return res;
+	}
+	
+	//inflates the raw deflate data of one block and checks it against the footer
+	private static byte[] inflate(byte[] compressed) throws IOException, DataFormatException{
+		int size = readInt(compressed, compressed.length - 4);
+		byte[] res = new byte[size];
+		
+		Inflater inflater = new Inflater(true);
+		inflater.setInput(compressed);
+		int n = 0;
+		while(n < size && !inflater.finished()){
+			int r = inflater.inflate(res, n, size - n);
+			if(r == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+				break;
+			n += r;
+		}
+		inflater.end();
+		if(n != size)
+			throw new IOException("Corrupt BGZF block");
+		
+		CRC32 crc = new CRC32();
+		crc.update(res, 0, size);
+		if((int)crc.getValue() != readInt(compressed, compressed.length - FOOTER_SIZE))
+			throw new IOException("CRC32 mismatch in BGZF block");
+		return res;
+	}
+	
+	private static boolean isGZIPHeader(byte[] header){
+		return (header[0] & 0xFF) == 31 && (header[1] & 0xFF) == 139 && header[2] == 8 && (header[3] & 4) != 0;
+	}
+	
+	//finds the BSIZE in the "BC" subfield and returns the total block size, or -1 if there is no such subfield
+	private static int blockSize(byte[] extra){
+		int i = 0;
+		while(i + 4 <= extra.length){
+			int len = readShort(extra, i + 2);
+			if(extra[i] == 'B' && extra[i + 1] == 'C' && len == 2 && i + 6 <= extra.length)
+				return readShort(extra, i + 4) + 1;
+			i += 4 + len;
+		}
+		return -1;
+	}
+	
+	private static int readShort(byte[] b, int i){
+		return (b[i] & 0xFF) | ((b[i + 1] & 0xFF) << 8);
+	}
+	
+	private static int readInt(byte[] b, int i){
+		return readShort(b, i) | (readShort(b, i + 2) << 16);
+	}
+	
+	//returns the number of bytes read, which is less than the length of the array at the end of the stream
+	private static int readFully(InputStream in, byte[] b) throws IOException{
+		int n = 0;
+		while(n < b.length){
+			int r = in.read(b, n, b.length - n);
+			if(r == -1)
+				break;
+			n += r;
+		}
+		return n;
+	}
+}
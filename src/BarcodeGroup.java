@@ -0,0 +1,48 @@
+import java.util.ArrayList;
+
+public class BarcodeGroup{
+	//barcodes with the same length that are searched for at the same time, packed side by side in the bits of one long
+	//each barcode gets length + 1 bits, so the extra bit can stop carries and shifts from getting into the next barcode
+	public static final int MAX_BITS = 63;
+	
+	public int length;
+	public int[] samples; //sample of each barcode in the group, in order
+	public long[] pm; //pattern masks for each code, like UtilMethods.genPatternMasks
+	
+	public BarcodeGroup(int length, int[] samples, long[] pm){
+		this.length = length;
+		this.samples = samples;
+		this.pm = pm;
+	}
+	
+	//max number of barcodes with a certain length in one group
+	public static int maxSize(int length){
+		return MAX_BITS / (length + 1);
+	}
+	
+	//groups barcodes by length, so each group has as many barcodes as fit in a long
+	//barcodes that are too long to share a long, or are empty, are not put in groups
+	public static ArrayList<BarcodeGroup> group(ArrayList<String> barcodes, boolean wildcard){
+		ArrayList<BarcodeGroup> res = new ArrayList<BarcodeGroup>();
+		boolean[] grouped = new boolean[barcodes.size()];
+		for(int i = 0; i < barcodes.size(); i++){
+			int length = barcodes.get(i).length();
+			if(grouped[i] || length == 0 || maxSize(length) < 2)
+				continue;
+			ArrayList<String> groupBarcodes = new ArrayList<String>();
+			ArrayList<Integer> groupSamples = new ArrayList<Integer>();
+			for(int j = i; j < barcodes.size() && groupSamples.size() < maxSize(length); j++){
+				if(!grouped[j] && barcodes.get(j).length() == length){
+					grouped[j] = true;
+					groupBarcodes.add(barcodes.get(j));
+					groupSamples.add(j);
+				}
+			}
+			int[] samples = new int[groupSamples.size()];
+			for(int j = 0; j < samples.length; j++)
+				samples[j] = groupSamples.get(j);
+			res.add(new BarcodeGroup(length, samples, UtilMethods.genMultiPatternMasks(groupBarcodes, wildcard)));
+		}
+		return res;
+	}
+}
@@ -0,0 +1,129 @@
+import java.util.ArrayList;
+
+public class BarcodeIndex{
+	//finds every sample whose barcode is a certain sequence with one lookup, instead of searching for each sample's barcode
+	//there is one index for each barcode length, and the sequences are packed into 3 bits per base (so 'N' has its own code) to be used as keys
+	//the keys are kept in an open addressing table of longs, so lookups do not need to allocate
+	//if mismatches are allowed, every sequence within that many substitutions of a barcode is a key too (the barcode's neighbors)
+	//each key has an entry for every sample that it is a neighbor of, in order, with the number of mismatches
+	//so a key with multiple entries is ambiguous, and the caller decides what to do with it
+	public static final int MAX_LENGTH = 21; //63 bits
+	public static final int MAX_EDITS = 2;
+	private static final long EMPTY = -1L;
+	
+	private int length;
+	private int edits;
+	private long[] keys;
+	private int[][] entries; //sample * 4 + mismatches
+	private int mask;
+	
+	//indexes all barcodes of a certain length, and their neighbors with up to a number of mismatches
+	public BarcodeIndex(ArrayList<String> barcodes, int length, int edits){
+		this.length = length;
+		this.edits = edits;
+		int count = 0;
+		for(int i = 0; i < barcodes.size(); i++){
+			if(barcodes.get(i).length() == length)
+				count++;
+		}
+		long size = count * neighbors(length, edits);
+		int capacity = Integer.highestOneBit((int)Math.max(size, 1) * 2 - 1) << 1; //at most 1/2 full, so probing is short
+		keys = new long[capacity];
+		entries = new int[capacity][];
+		mask = capacity - 1;
+		for(int i = 0; i < keys.length; i++)
+			keys[i] = EMPTY;
+		
+		for(int i = 0; i < barcodes.size(); i++){
+			if(barcodes.get(i).length() == length)
+				addNeighbors(key(barcodes.get(i)), 0, 0, i);
+		}
+	}
+	
+	//number of sequences within some mismatches of a barcode, since each mismatch can be one of the 4 other codes
+	public static long neighbors(int length, int edits){
+		long res = 0L;
+		long choose = 1L;
+		long pow = 1L;
+		for(int i = 0; i <= edits && i <= length; i++){
+			res += choose * pow;
+			choose = choose * (length - i) / (i + 1);
+			pow *= PackedSequence.CODES - 1;
+		}
+		return res;
+	}
+	
+	//changes the bases from pos onwards, so each neighbor is only added once, with its exact number of mismatches
+	private void addNeighbors(long key, int pos, int mismatches, int sample){
+		add(key, sample * 4 + mismatches);
+		if(mismatches == edits)
+			return;
+		for(int i = pos; i < length; i++){
+			long c = (key >>> (i * 3)) & 7L;
+			for(long d = 0; d < PackedSequence.CODES; d++){
+				if(d != c)
+					addNeighbors((key & ~(7L << (i * 3))) | (d << (i * 3)), i + 1, mismatches + 1, sample);
+			}
+		}
+	}
+	
+	private void add(long key, int entry){
+		int slot = slot(key);
+		if(keys[slot] == EMPTY){
+			keys[slot] = key;
+			entries[slot] = new int[]{entry};
+		}else{ //neighbor of different samples, or the same barcode for different samples
+			int[] old = entries[slot];
+			entries[slot] = new int[old.length + 1];
+			System.arraycopy(old, 0, entries[slot], 0, old.length);
+			entries[slot][old.length] = entry;
+		}
+	}
+	
+	public int length(){
+		return length;
+	}
+	
+	public static int sample(int entry){
+		return entry >>> 2;
+	}
+	
+	public static int mismatches(int entry){
+		return entry & 3;
+	}
+	
+	public static long key(CharSequence s){
+		long key = 0L;
+		for(int i = s.length() - 1; i >= 0; i--)
+			key = (key << 3) | PackedSequence.code(s.charAt(i));
+		return key;
+	}
+	
+	//the key of the bases from start to start + length in an encoded read
+	//returns -1 if wildcard is true and there is an 'N', since it could match any barcode
+	public long key(PackedSequence s, int start, boolean wildcard){
+		long key = 0L;
+		for(int i = start + length - 1; i >= start; i--){
+			int c = s.code(i);
+			if(wildcard && c == PackedSequence.N)
+				return EMPTY;
+			key = (key << 3) | c;
+		}
+		return key;
+	}
+	
+	//returns the entries of a key, or null if no barcode has the key
+	public int[] get(long key){
+		if(key == EMPTY)
+			return null;
+		int slot = slot(key);
+		return keys[slot] == key ? entries[slot] : null;
+	}
+	
+	private int slot(long key){
+		int slot = (int)((key * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+		while(keys[slot] != EMPTY && keys[slot] != key)
+			slot = (slot + 1) & mask;
+		return slot;
+	}
+}
@@ -0,0 +1,74 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class BarcodeMatch{
+	//the best barcode and enzyme match found so far in a read, while the samples are checked one by one
+	//the best match has the fewest edits, and then the longest length
+	public static final int[] NOT_FOUND = new int[0]; //a sample whose reversed barcode and enzyme were checked for but not found
+	public int sample, barcodeEnd, barcodeLength, enzymeEnd, barcodeEnd2, enzymeEnd2, minEdit;
+	public int matchCount; //used for checking if a read matches multiple barcodes
+	public long[] candidates = new long[16]; //samples with exact barcodes, reused for every read
+	public ArrayList<Match>[] sampleMatches; //barcode matches of each sample, only set for the samples in matched
+	public int[] matched = new int[16];
+	public int matchedCount = 0;
+	public EnzymeTable.Results enzymesF, enzymesR; //enzyme searches of the read, which are shared by every sample
+	public ArrayList<Match> fusedMatches = new ArrayList<Match>(); //barcode matches found with a fused pattern
+	public int[] enzymeEnds = new int[16]; //end of the enzyme after each of the fused matches
+	public boolean[] barcodeEnds = new boolean[64]; //places right before an enzyme, where a barcode could end
+	private int[][] reversedEnds; //ends of the reversed barcode and enzyme of each sample, only set for the samples in reversedSamples
+	private int[] reversedSamples = new int[16];
+	private int reversedCount = 0;
+	
+	public BarcodeMatch(int samples){
+		sampleMatches = Match.lists(samples);
+		reversedEnds = new int[samples][];
+		reset();
+	}
+	
+	public void reset(){
+		sample = -1;
+		barcodeEnd = -1;
+		barcodeLength = 0;
+		enzymeEnd = -1;
+		barcodeEnd2 = -1;
+		enzymeEnd2 = -1;
+		minEdit = Integer.MAX_VALUE;
+		matchCount = 0;
+	}
+	
+	public void addMatches(int sample, ArrayList<Match> matches){
+		if(matchedCount == matched.length)
+			matched = Arrays.copyOf(matched, matchedCount * 2);
+		matched[matchedCount++] = sample;
+		sampleMatches[sample] = matches;
+	}
+	
+	//only the samples that were set need to be cleared
+	public void clearMatches(){
+		for(int i = 0; i < matchedCount; i++)
+			sampleMatches[matched[i]] = null;
+		matchedCount = 0;
+	}
+	
+	//returns the ends of the reversed barcode and enzyme of a sample, NOT_FOUND if they are not in the read, or null if they were not checked yet
+	public int[] reversedEnds(int sample){
+		return reversedEnds[sample];
+	}
+	
+	public void setReversedEnds(int sample, int[] ends){
+		if(reversedCount == reversedSamples.length)
+			reversedSamples = Arrays.copyOf(reversedSamples, reversedCount * 2);
+		reversedSamples[reversedCount++] = sample;
+		reversedEnds[sample] = ends;
+	}
+	
+	//the enzyme searches and reversed reads are only cleared when a new read is checked, since they stay the same for every sample in a read
+	public void clearRead(){
+		enzymesF.clear();
+		if(enzymesR != null)
+			enzymesR.clear();
+		for(int i = 0; i < reversedCount; i++)
+			reversedEnds[reversedSamples[i]] = null;
+		reversedCount = 0;
+	}
+}
@@ -0,0 +1,79 @@
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.IntStream;
+
+public class BarcodeSetAnalysis{
+	//looks at the sample sheet's barcodes when starting, to help decide how to demultiplex
+	//the distance between two barcodes is the number of mismatches between the shorter barcode and the start of the longer one, since both are matched from the start of the read
+	//two barcodes collide if a read could be within the max edits of both, so the read may not be assigned to the sample it came from
+	//the pairs are compared in parallel, since sample sheets can have thousands of barcodes
+	public static final int MAX_COLLISIONS_LOGGED = 16;
+	
+	private TreeMap<Integer, Integer> lengths = new TreeMap<Integer, Integer>(); //barcode length to number of barcodes
+	private int minDistance = Integer.MAX_VALUE;
+	private long collisionCount = 0L;
+	private ArrayList<int[]> collisions = new ArrayList<int[]>(); //the first collision of the first few barcodes that have one, as {barcode, barcode, distance}
+	
+	public BarcodeSetAnalysis(ArrayList<String> barcodes, double edit, boolean wildcard){
+		for(String barcode : barcodes)
+			lengths.put(barcode.length(), lengths.getOrDefault(barcode.length(), 0) + 1);
+		
+		int n = barcodes.size();
+		int[][] codes = new int[n][];
+		int[] edits = new int[n];
+		for(int i = 0; i < n; i++){
+			String barcode = barcodes.get(i);
+			codes[i] = new int[barcode.length()];
+			for(int j = 0; j < barcode.length(); j++)
+				codes[i][j] = PackedSequence.code(barcode.charAt(j));
+			edits[i] = UtilMethods.maxEdits(edit, barcode.length());
+		}
+		
+		int[] minDistances = new int[n];
+		long[] collisionCounts = new long[n];
+		int[][] firstCollisions = new int[n][];
+		IntStream.range(0, n).parallel().forEach((i) -> {
+			int min = Integer.MAX_VALUE;
+			for(int j = i + 1; j < n; j++){
+				int d = distance(codes[i], codes[j], wildcard);
+				min = Math.min(min, d);
+				if(d <= edits[i] + edits[j]){
+					if(collisionCounts[i] == 0L)
+						firstCollisions[i] = new int[]{i, j, d};
+					collisionCounts[i]++;
+				}
+			}
+			minDistances[i] = min;
+		});
+		for(int i = 0; i < n; i++){
+			minDistance = Math.min(minDistance, minDistances[i]);
+			collisionCount += collisionCounts[i];
+			if(firstCollisions[i] != null && collisions.size() < MAX_COLLISIONS_LOGGED)
+				collisions.add(firstCollisions[i]);
+		}
+	}
+	
+	private static int distance(int[] a, int[] b, boolean wildcard){
+		int d = 0;
+		for(int i = 0; i < Math.min(a.length, b.length); i++){
+			if(a[i] != b[i] && !(wildcard && (a[i] == PackedSequence.N || b[i] == PackedSequence.N)))
+				d++;
+		}
+		return d;
+	}
+	
+	public void print(PrintWriter logWriter, ArrayList<String> barcodes, Map<String, String> names){
+		String s = "";
+		for(Map.Entry<Integer, Integer> e : lengths.entrySet())
+			s += (s.isEmpty() ? "" : ", ") + e.getKey() + " (" + e.getValue() + ")";
+		logWriter.println("Barcode Lengths: " + s);
+		logWriter.println("Min Barcode Distance: " + (minDistance == Integer.MAX_VALUE ? "none" : minDistance));
+		logWriter.println("Barcode Collisions: " + collisionCount);
+		for(int[] c : collisions){
+			logWriter.println("Barcode Collision: " + names.get(barcodes.get(c[0])) + " (" + barcodes.get(c[0]) + ") and " +
+					names.get(barcodes.get(c[1])) + " (" + barcodes.get(c[1]) + "), Distance: " + c[2]);
+		}
+	}
+}
@@ -0,0 +1,121 @@
+import java.util.ArrayList;
+
+public class BarcodeTrie{
+	//the barcodes of one length in a trie, so barcodes with the same prefix share the work of matching that prefix
+	//the trie is walked depth first against the start of the read, with one column of the edit distance table for each node
+	//a branch is pruned once every value in its column is over the max edits, since going deeper can only make the values larger
+	//so the time depends on the barcode length and the max edits, not on the number of barcodes
+	//the matches of each barcode are the same as searchWithN with bestOnly set to false, but only the barcodes with matches are given back
+	public static final int MAX_LENGTH = 62; //longer barcodes do not fit in one chunk of a BitVector, so they are searched the normal way
+	private static final int PAD = -1; //code for the positions before the read when matches can overlap the start of the read
+	
+	private int length;
+	private int[] children; //node * CODES + code, or 0 if there is no child (the root is node 0, so it is never a child)
+	private int[][] samples; //samples whose barcodes end at each node, in order
+	private int nodes = 1;
+	private ThreadLocal<int[][]> columns; //one column for each depth, reused by each thread
+	private ThreadLocal<int[]> text;
+	
+	//puts all barcodes of a certain length in a trie
+	public BarcodeTrie(ArrayList<String> barcodes, int length){
+		this.length = length;
+		int maxNodes = 1;
+		for(int i = 0; i < barcodes.size(); i++){
+			if(barcodes.get(i).length() == length)
+				maxNodes += length;
+		}
+		children = new int[maxNodes * PackedSequence.CODES];
+		samples = new int[maxNodes][];
+		for(int i = 0; i < barcodes.size(); i++){
+			String barcode = barcodes.get(i);
+			if(barcode.length() != length)
+				continue;
+			int node = 0;
+			for(int j = 0; j < length; j++){
+				int c = node * PackedSequence.CODES + PackedSequence.code(barcode.charAt(j));
+				if(children[c] == 0)
+					children[c] = nodes++;
+				node = children[c];
+			}
+			if(samples[node] == null){
+				samples[node] = new int[]{i};
+			}else{ //same barcode for different samples
+				int[] old = samples[node];
+				samples[node] = new int[old.length + 1];
+				System.arraycopy(old, 0, samples[node], 0, old.length);
+				samples[node][old.length] = i;
+			}
+		}
+		columns = ThreadLocal.withInitial(() -> new int[length + 1][0]);
+		text = ThreadLocal.withInitial(() -> new int[0]);
+	}
+	
+	public int length(){
+		return length;
+	}
+	
+	//finds the matches of every barcode in the trie between s = 0 and e in a, and adds the samples with matches to res
+	public void search(PackedSequence a, int e, double edit, boolean indels, int minOverlap, boolean wildcard, BarcodeMatch res){
+		minOverlap = Math.min(minOverlap, length);
+		int pad = length - minOverlap; //a is treated as if it starts with this many '#', which match anything
+		int n = e + pad;
+		int cap = UtilMethods.maxEdits(edit, length) + 1; //values at or over this can never be a match, so they are all saved as this
+		
+		int[] t = text.get();
+		if(t.length < n){
+			t = new int[n];
+			text.set(t);
+		}
+		for(int x = 0; x < n; x++)
+			t[x] = x < pad ? PAD : a.code(x - pad);
+		int[][] col = columns.get();
+		if(col[0].length < n + 1){
+			for(int d = 0; d <= length; d++)
+				col[d] = new int[n + 1];
+		}
+		//column 0 is for the empty prefix, which matches before every position
+		//index x + 1 of each column is for position x in the padded read, and index 0 is for before the read
+		for(int x = 0; x <= n; x++)
+			col[0][x] = 0;
+		
+		walk(0, 0, t, n, col, cap, edit, indels, pad, minOverlap, wildcard, res);
+	}
+	
+	private void walk(int node, int depth, int[] t, int n, int[][] col, int cap, double edit, boolean indels, int pad, int minOverlap, boolean wildcard, BarcodeMatch res){
+		int[] prev = col[depth];
+		int[] curr = col[depth + 1];
+		for(int c = 0; c < PackedSequence.CODES; c++){
+			int child = children[node * PackedSequence.CODES + c];
+			if(child == 0)
+				continue;
+			//with indels, the prefix can be deleted before the read, otherwise the prefix must fit in the read
+			curr[0] = indels ? Math.min(depth + 1, cap) : cap;
+			int min = curr[0];
+			for(int x = 0; x < n; x++){
+				int v = prev[x] + (t[x] == PAD || t[x] == c || (wildcard && (t[x] == PackedSequence.N || c == PackedSequence.N)) ? 0 : 1);
+				if(indels)
+					v = Math.min(v, Math.min(prev[x + 1], curr[x]) + 1);
+				curr[x + 1] = Math.min(v, cap);
+				min = Math.min(min, curr[x + 1]);
+			}
+			
+			if(min >= cap)
+				continue;
+			if(depth + 1 < length){
+				walk(child, depth + 1, t, n, col, cap, edit, indels, pad, minOverlap, wildcard, res);
+				continue;
+			}
+			ArrayList<Match> matches = new ArrayList<Match>();
+			for(int x = 0; x < n; x++){
+				int index = x - pad;
+				int matchLength = Math.min(index + 1, length);
+				if(curr[x + 1] < cap && curr[x + 1] <= UtilMethods.maxEdits(edit, matchLength) && matchLength >= minOverlap)
+					matches.add(new Match(index, curr[x + 1], matchLength));
+			}
+			if(!matches.isEmpty()){
+				for(int sample : samples[child]) //the same barcode for different samples has the same matches
+					res.addMatches(sample, matches);
+			}
+		}
+	}
+}
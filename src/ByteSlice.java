@@ -0,0 +1,69 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+public class ByteSlice implements CharSequence{
+	//a view of part of a byte array, so lines from a .fastq file never need to be copied into Strings
+	//multiple slices can share the same array
+	public byte[] arr;
+	public int offset;
+	public int length;
+	
+	public ByteSlice(byte[] arr, int offset, int length){
+		this.arr = arr;
+		this.offset = offset;
+		this.length = length;
+	}
+	
+	//copies the characters of a String (only for short sequences like barcodes)
+	public ByteSlice(String s){
+		this(s.getBytes(StandardCharsets.ISO_8859_1), 0, s.length());
+	}
+	
+	@Override
+	public int length(){
+		return length;
+	}
+	
+	@Override
+	public char charAt(int i){
+		return (char)(arr[offset + i] & 0xFF);
+	}
+	
+	public byte byteAt(int i){
+		return arr[offset + i];
+	}
+	
+	//shares the same array, so nothing is copied
+	@Override
+	public ByteSlice subSequence(int start, int end){
+		return new ByteSlice(arr, offset + start, end - start);
+	}
+	
+	public ByteSlice subSequence(int start){
+		return subSequence(start, length);
+	}
+	
+	//narrows this slice to part of itself without creating a new slice
+	public void narrow(int start, int end){
+		offset += start;
+		length = end - start;
+	}
+	
+	//this creates a new array that contains both slices
+	public ByteSlice concat(ByteSlice o){
+		byte[] res = new byte[length + o.length];
+		System.arraycopy(arr, offset, res, 0, length);
+		System.arraycopy(o.arr, o.offset, res, length, o.length);
+		return new ByteSlice(res, 0, res.length);
+	}
+	
+	public void writeTo(OutputStream out) throws IOException{
+		out.write(arr, offset, length);
+	}
+	
+	@Override
+	public String toString(){
+		return new String(arr, offset, length, StandardCharsets.ISO_8859_1);
+	}
+}
@@ -0,0 +1,154 @@
+import java.io.PrintWriter;
+import java.text.DecimalFormat;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+public class DemuxCache{
+	//remembers the demultiplexing result of the start of each read, since most reads start with one of a few barcode and enzyme combinations
+	//the result only depends on the bases that the barcode and enzyme searches could look at, so reads with the same bases there get the same result
+	//if the reversed reads are not in the key, then only the forwards result should be saved, since the reversed ends also depend on the length of each reversed read
+	//the key is those bases (forwards, and reversed if the reversed reads are checked), packed into 3 bits per base so 'N' has its own code
+	//the cache is split into segments that are each a small LRU map with their own lock, so the threads do not wait for each other much
+	//each thread packs its reads into the same key every time, and the key is only copied when a new result is saved
+	private static final int SEGMENTS = 64;
+	private static final int CODES_PER_LONG = 21;
+	
+	private int prefixF, prefixR;
+	private Segment[] segments;
+	private LongAdder hits = new LongAdder();
+	private LongAdder misses = new LongAdder();
+	private LongAdder evictions = new LongAdder();
+	private ThreadLocal<Key> keys;
+	
+	//prefixF and prefixR are the max number of bases the searches could look at in the forwards and reversed reads
+	public DemuxCache(int size, int prefixF, int prefixR){
+		this.prefixF = prefixF;
+		this.prefixR = prefixR;
+		segments = new Segment[SEGMENTS];
+		for(int i = 0; i < SEGMENTS; i++)
+			segments[i] = new Segment(Math.max(1, size / SEGMENTS));
+		int maxWords = 1 + (prefixF + CODES_PER_LONG - 1) / CODES_PER_LONG + (prefixR + CODES_PER_LONG - 1) / CODES_PER_LONG;
+		keys = ThreadLocal.withInitial(() -> new Key(new long[maxWords], 0));
+	}
+	
+	public int prefixF(){
+		return prefixF;
+	}
+	
+	public int prefixR(){
+		return prefixR;
+	}
+	
+	//the key of a read, with the reversed read only if it is checked (readR can be null)
+	//the key is reused by the thread, so it can only be used until the thread gets the key of another read
+	public Key key(PackedSequence readF, PackedSequence readR){
+		int lengthF = Math.min(readF.length(), prefixF); //reads shorter than the prefix are keyed on the whole read, so the length is in the key
+		int lengthR = readR == null ? 0 : Math.min(readR.length(), prefixR);
+		Key key = keys.get();
+		key.words[0] = ((long)lengthF << 32) | lengthR;
+		int w = pack(readF, lengthF, key.words, 1);
+		if(readR != null)
+			w = pack(readR, lengthR, key.words, w);
+		key.set(w);
+		return key;
+	}
+	
+	private static int pack(PackedSequence s, int length, long[] words, int w){
+		for(int i = 0; i < length; i += CODES_PER_LONG){
+			long word = 0L;
+			for(int j = Math.min(length, i + CODES_PER_LONG) - 1; j >= i; j--)
+				word = (word << 3) | s.code(j);
+			words[w++] = word;
+		}
+		return w;
+	}
+	
+	//returns the saved result of a key, or null if it is not saved
+	public int[] get(Key key){
+		Segment segment = segments[(key.hash >>> 16) & (SEGMENTS - 1)];
+		int[] res;
+		synchronized(segment){
+			res = segment.get(key);
+		}
+		if(res == null)
+			misses.increment();
+		else
+			hits.increment();
+		return res;
+	}
+	
+	public void put(Key key, int[] result){
+		Segment segment = segments[(key.hash >>> 16) & (SEGMENTS - 1)];
+		synchronized(segment){
+			segment.put(key.copy(), result);
+		}
+	}
+	
+	public void print(PrintWriter logWriter, DecimalFormat format){
+		long h = hits.sum();
+		long m = misses.sum();
+		logWriter.println("Demultiplex Cache Hits: " + format.format(h) + " (" + format.format(h + m == 0 ? 0.0 : (double)h / (h + m) * 100.0) + "%)");
+		logWriter.println("Demultiplex Cache Misses: " + format.format(m));
+		logWriter.println("Demultiplex Cache Evictions: " + format.format(evictions.sum()));
+	}
+	
+	public static class Key{
+		private long[] words;
+		private int length; //number of words used
+		private int hash;
+		
+		private Key(long[] words, int length){
+			this.words = words;
+			set(length);
+		}
+		
+		private void set(int length){
+			this.length = length;
+			long h = 0L;
+			for(int i = 0; i < length; i++)
+				h = (h + words[i]) * 0x9E3779B97F4A7C15L;
+			hash = (int)(h >>> 32);
+		}
+		
+		private Key copy(){
+			return new Key(Arrays.copyOf(words, length), length);
+		}
+		
+		@Override
+		public int hashCode(){
+			return hash;
+		}
+		
+		@Override
+		public boolean equals(Object o){
+			if(!(o instanceof Key) || ((Key)o).hash != hash || ((Key)o).length != length)
+				return false;
+			for(int i = 0; i < length; i++){
+				if(((Key)o).words[i] != words[i])
+					return false;
+			}
+			return true;
+		}
+	}
+	
+	//least recently used keys are removed first
+	@SuppressWarnings("serial")
+	private class Segment extends LinkedHashMap<Key, int[]>{
+		private int capacity;
+		
+		Segment(int capacity){
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+		
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, int[]> eldest){
+			if(size() <= capacity)
+				return false;
+			evictions.increment();
+			return true;
+		}
+	}
+}
@@ -0,0 +1,88 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+public class EnzymeTable{
+	//the distinct enzyme remnants of all samples, since most samples use the same enzymes
+	//the pattern masks of each remnant are only made once, and each remnant is only searched for once at each start in a read
+	//the searches of a read are saved in Results, which is reused for every read by one thread
+	private ArrayList<String> enzymes = new ArrayList<String>();
+	private ArrayList<BitVector[]> patterns; //null if the searches do not use pattern masks
+	private int[][] sampleEnzymes; //ids of the enzymes of each sample, in order
+	private int maxStart;
+	
+	//maxStart is the max start that searches are saved for, which is the max end of a barcode
+	public EnzymeTable(ArrayList<ArrayList<String>> sampleEnzymes, int maxStart, boolean masks, boolean indels, boolean wildcard){
+		this.maxStart = maxStart;
+		this.sampleEnzymes = new int[sampleEnzymes.size()][];
+		HashMap<String, Integer> ids = new HashMap<String, Integer>();
+		for(int i = 0; i < sampleEnzymes.size(); i++){
+			this.sampleEnzymes[i] = new int[sampleEnzymes.get(i).size()];
+			for(int j = 0; j < sampleEnzymes.get(i).size(); j++){
+				String enzyme = sampleEnzymes.get(i).get(j);
+				if(!ids.containsKey(enzyme)){
+					ids.put(enzyme, enzymes.size());
+					enzymes.add(enzyme);
+				}
+				this.sampleEnzymes[i][j] = ids.get(enzyme);
+			}
+		}
+		if(masks){
+			patterns = new ArrayList<BitVector[]>();
+			for(String enzyme : enzymes)
+				patterns.add(UtilMethods.genPatternMasks(enzyme, indels, wildcard));
+		}
+	}
+	
+	public int size(){
+		return enzymes.size();
+	}
+	
+	public String enzyme(int id){
+		return enzymes.get(id);
+	}
+	
+	public BitVector[] patterns(int id){
+		return patterns.get(id);
+	}
+	
+	public int[] sampleEnzymes(int sample){
+		return sampleEnzymes[sample];
+	}
+	
+	public Results results(){
+		return new Results();
+	}
+	
+	//the enzyme matches found at each start in one read
+	public class Results{
+		private ArrayList<Match>[] matches;
+		private int[] saved = new int[16];
+		private int savedCount = 0;
+		
+		private Results(){
+			matches = Match.lists(enzymes.size() * (maxStart + 1));
+		}
+		
+		//returns the matches of an enzyme that were already searched for at a start, or null if they were not
+		public ArrayList<Match> get(int id, int start){
+			return start > maxStart ? null : matches[id * (maxStart + 1) + start];
+		}
+		
+		public void put(int id, int start, ArrayList<Match> m){
+			if(start > maxStart)
+				return;
+			if(savedCount == saved.length)
+				saved = Arrays.copyOf(saved, savedCount * 2);
+			saved[savedCount++] = id * (maxStart + 1) + start;
+			matches[id * (maxStart + 1) + start] = m;
+		}
+		
+		//only the searches that were saved need to be cleared
+		public void clear(){
+			for(int i = 0; i < savedCount; i++)
+				matches[saved[i]] = null;
+			savedCount = 0;
+		}
+	}
+}
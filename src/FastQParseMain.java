@@ -1,12 +1,18 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileDescriptor;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.text.DateFormat;
 import java.text.DecimalFormat;
@@ -19,7 +25,14 @@ import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Random;
+import java.util.Spliterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.StreamSupport;
 import java.util.zip.GZIPInputStream;
@@ -31,7 +44,19 @@ public class FastQParseMain {
 	private static final int BUFFER_SIZE = 16384; //buffer size for buffered reader/writer
 	private static final int BUFFER_SIZE_GZIP = 16384; //buffer size for gzip stream
 	private static final int BUFFER_SIZE_LOG = 8192; //buffer size for log/stats files
+	private static final int BUFFER_SIZE_FASTQ = 1048576; //buffer size for the .fastq record parser
+	private static final int THREADS = Runtime.getRuntime().availableProcessors();
+	private static final int BGZF_BLOCKS_PER_THREAD = 4; //number of BGZF blocks each decompression thread can be working on
+	private static final int GZIP_INDEX_SPAN = 4194304; //uncompressed bytes between access points in a gzip index
+	private static final int PREFETCH_BATCH_SIZE = 1024; //records in each batch passed from a prefetcher thread
+	private static final int PREFETCH_BATCHES = 16; //max number of batches waiting in each prefetcher
+	private static final int READ_BATCH_SIZE = 1024; //max number of reads that go through the processing stages together
+	private static final long MAX_BARCODE_INDEX_SIZE = 4194304L; //max number of barcodes and barcode neighbors to look up barcodes with
+	private static final int BARCODE_TRIE_MIN_SAMPLES = 384; //min number of samples to search for the barcodes with tries instead of one by one
+	private static final long FOLLOW_FLUSH_INTERVAL = 30000L; //milliseconds between flushing outputs and stats when following input files
 	private static final String description2 = "+"; //the second description (3rd line in each read)
+	private static final byte[] DESCRIPTION2_BYTES = description2.getBytes(); //description2 for writing bytes directly
+	private static final byte[] NEW_LINE = System.lineSeparator().getBytes(); //same line separator as BufferedWriter.newLine()
 	
 	private static PrintWriter logWriter; //prints to log file
 	
@@ -40,6 +65,7 @@ public class FastQParseMain {
 	private static File sampleInfoFile; //.txt file with sample barcode sequences
 	private static File indexFileF; //index file for UMI
 	private static File indexFileR; //index file for paired-ends sequencing
+	private static File[] inputFilesF, inputFilesR, indexFilesF, indexFilesR; //files for each lane (the first lane is also in the variables above)
 	private static String outputDir; //directory where output files go
 	
 	private static int randUMILength; //length of random UMI sequence (could be 0)
@@ -56,6 +82,21 @@ public class FastQParseMain {
 	private static boolean filterAlgorithm = false; //false = average, true = error sum
 	
 	private static boolean inputGZIP = false; //is input file gzipped (sample file is not gzipped)
+	private static boolean inputBGZF = false; //is input file made of BGZF blocks that can be decompressed in parallel
+	private static boolean gzipIndex = false; //build or use an index of access points to decompress gzipped input in parallel
+	private static boolean stdinInput = false; //read single end or interleaved paired end reads from stdin
+	private static boolean stdoutOutput = false; //write kept reads to stdout, and the log and stats to stderr
+	private static boolean followInput = false; //keep reading input files that are still being written
+	private static boolean indexFirst = false; //match the index reads first, then route the reads of each file on their own
+	private static AllocationBudget allocationBudget = null; //measures the bytes allocated per read by each stage, if not null
+	private static String demuxStrategy = "auto"; //how to find the barcodes in reads: auto, search, exact, neighbors, or anchored
+	private static int demuxCacheSize = 65536; //max number of read starts to remember the demultiplexing results of, or 0 to not remember any (not used when the barcode indexes find every match)
+	private static int maxOpenFiles = 512; //max number of sample files that are open at the same time if there are more sample files than this, or 0 to keep every sample file open
+	private static long followIdleTimeout = 600000L; //stop following after this many milliseconds without new data
+	private static File followEndMarker = null; //stop following once this file exists and all data is read
+	private static InputStream stdin = null;
+	private static PrintStream console = System.out; //for printing progress messages
+	private static ExecutorService decompressPool = null; //threads for decompressing BGZF blocks or indexed gzip segments
 	private static boolean outputGZIP = false; //is output file gzipped
 	
 	private static boolean saveTemp = false; //save to temp file or not
@@ -104,6 +145,7 @@ public class FastQParseMain {
 	
 	private static boolean parallel = false; //use parallel streams or not
 	private static int splitBatchSize = 1024; //batch size when using ReadSpliterator
+	private static boolean adaptiveBatchSize = false; //choose the batch size while running, if a batch size is not specified
 	
 	private static boolean simReversed = false; //generate simulated data
 	private static boolean simUMI = false;
@@ -144,16 +186,29 @@ public class FastQParseMain {
 	private HashMap<String, String> sampleMapF = new HashMap<String, String>(); //maps barcode sequence to sample name
 	private ArrayList<String> sampleBarcodeF = new ArrayList<String>(); //names saved twice to keep them in order
 	private ArrayList<String> sampleBarcodeR = new ArrayList<String>();
+	private ArrayList<String> reversedBarcodes = new ArrayList<String>(); //barcodes to search for in reversed reads, which are the complements of the forwards barcodes if there are no reversed barcodes
 	
 	private ArrayList<ArrayList<String>> sampleEnzymesF = new ArrayList<ArrayList<String>>();
 	private ArrayList<ArrayList<String>> sampleEnzymesR = new ArrayList<ArrayList<String>>();
 	
-	private ArrayList<HashMap<Character, BitVector>> barcodePatternsF;
-	private ArrayList<HashMap<Character, BitVector>> barcodePatternsR;
-	private ArrayList<ArrayList<HashMap<Character, BitVector>>> enzymePatternsF;
-	private ArrayList<ArrayList<HashMap<Character, BitVector>>> enzymePatternsR;
-	private ArrayList<HashMap<Character, BitVector>> adapterPatternsF;
-	private ArrayList<HashMap<Character, BitVector>> adapterPatternsR;
+	private ArrayList<BitVector[]> barcodePatternsF;
+	private ArrayList<BitVector[]> barcodePatternsR;
+	private EnzymeTable enzymeTableF; //distinct enzymes of all samples
+	private EnzymeTable enzymeTableR;
+	private ArrayList<BarcodeGroup> barcodeGroupsF; //barcodes that are searched for together
+	private BarcodeTrie[] barcodeTriesF = null; //barcodes for each barcode length in tries, or null if there are not enough samples for them to help
+	private ArrayList<FusedPattern> fusedPatternsF = null; //barcode and enzymes of each sample, or null if the barcodes and enzymes are searched for separately
+	private DemuxCache demuxCache = null; //demultiplexing results of the read starts seen so far, or null if they are not remembered
+	private OutputPool outputPool = null; //closes and opens the sample files so only a few are open at once, or null if every sample file stays open
+	private BarcodeIndex[] barcodeIndexes = null; //barcodes (and their neighbors) for each barcode length, or null if they cannot be used
+	private boolean barcodeIndexesComplete = false; //every match that searching could find is in the indexes
+	private BarcodeIndex[] anchorIndexes = null; //barcodes and their neighbors, looked up right before the enzymes, or null if barcodes are not found from the enzymes
+	private ArrayList<BarcodeGroup> anchorEnzymes = null; //distinct forwards enzymes, which are searched for together
+	private int anchorEnd = 0; //end of the part of the read that the enzymes are searched for in
+	private BarcodeIndex[] indexBarcodeIndexesF = null; //barcode neighbors for looking up the barcodes in index reads
+	private BarcodeIndex[] indexBarcodeIndexesR = null;
+	private ArrayList<BitVector[]> adapterPatternsF;
+	private ArrayList<BitVector[]> adapterPatternsR;
 	
 	private LongAdder totalReadsProcessed = new LongAdder(); //total DNA reads
 	private long duplicatesRemoved = 0L; //total duplicates removed
@@ -173,11 +228,12 @@ public class FastQParseMain {
 	private long startTime;
 	
 	private HashMap<String, EnumMap<Stat, String>> stats = new HashMap<String, EnumMap<Stat, String>>(); //stats for each sample
+	private ArrayList<String> laneRows = new ArrayList<String>(); //rows in the stats for each lane, after the combined rows
 	
 	//constructor handles printing to log and calling the methods to process the files
 	public FastQParseMain(Mode mode) throws Exception{
 		logWriter.println("Mode: " + mode.description1);
-		System.out.println("Mode: " + mode.description1);
+		console.println("Mode: " + mode.description1);
 		logWriter.println();
 		
 		if(mode == Mode.PROCESS){
@@ -204,23 +260,39 @@ public class FastQParseMain {
 			logWriter.println("Addition Enzymes: " + newEnzymes);
 			logWriter.println();
 			
-			logWriter.println("Forwards Read File: " + inputFileF.getAbsolutePath());
-			if(indexFileF != null)
-				logWriter.println("Forwards Index File: " + indexFileF.getAbsolutePath());
-			if(inputFileR != null){
-				logWriter.println("Reversed Read File: " + inputFileR.getAbsolutePath());
-				if(indexFileR != null)
-					logWriter.println("Reversed Index File: " + indexFileR.getAbsolutePath());
+			logWriter.println("Number of Lanes: " + inputFilesF.length);
+			for(int i = 0; i < inputFilesF.length; i++){
+				String lane = inputFilesF.length > 1 ? " (Lane " + (i + 1) + ")" : "";
+				logWriter.println("Forwards Read File" + lane + ": " + (stdinInput ? "stdin" : inputFilesF[i].getAbsolutePath()));
+				if(indexFileF != null)
+					logWriter.println("Forwards Index File" + lane + ": " + indexFilesF[i].getAbsolutePath());
+				if(inputFileR != null){
+					logWriter.println("Reversed Read File" + lane + ": " + (stdinInput ? "stdin (interleaved)" : inputFilesR[i].getAbsolutePath()));
+					if(indexFileR != null)
+						logWriter.println("Reversed Index File" + lane + ": " + indexFilesR[i].getAbsolutePath());
+				}
 			}
 			logWriter.println("Is Input GZIPPED: " + inputGZIP);
+			logWriter.println("Is Input BGZF: " + inputBGZF);
+			logWriter.println("Use Gzip Index: " + gzipIndex);
+			logWriter.println("Follow Input Files: " + followInput);
+			if(followInput){
+				logWriter.println("Follow Idle Timeout (s): " + followIdleTimeout / 1000L);
+				logWriter.println("Follow End Marker: " + (followEndMarker == null ? "none" : followEndMarker.getAbsolutePath()));
+			}
 			logWriter.println();
 			
-			logWriter.println("Output Directory: " + outputDir);
+			logWriter.println("Output Directory: " + (stdoutOutput ? "stdout (undetermined reads are not saved)" : outputDir));
 			logWriter.println("Is Output GZIPPED: " + outputGZIP);
 			logWriter.println();
 			
 			logWriter.println("Parallel: " + parallel);
-			logWriter.println("Parallel Batch Size: " + splitBatchSize);
+			logWriter.println("Parallel Batch Size: " + (adaptiveBatchSize ? "Adaptive" : splitBatchSize));
+			logWriter.println("Memory Mapped Input: " + (parallel && !inputGZIP && !stdinInput && !followInput && !indexFirst));
+			logWriter.println("Index First Demultiplexing: " + indexFirst);
+			if(indexFirst && sampleInfoFile != null)
+				logWriter.println("Sample Assignment Bytes Per Read: " + SampleAssignments.width(sampleBarcodeF.size()));
+			logWriter.println("Measure Allocated Bytes Per Read: " + (allocationBudget != null));
 			logWriter.println();
 			
 			logWriter.println("Length of Random UMI: " + randUMILength);
@@ -379,44 +451,61 @@ public class FastQParseMain {
 			map.put(Stat.BASE_PERCENT, "");
 			stats.put("Undetermined", map);
 			
+			if(sampleInfoFile != null){ //each distinct enzyme is only searched for once at each start in a read
+				enzymeTableF = new EnzymeTable(sampleEnzymesF, maxBarcodeEnd(sampleBarcodeF), probB < 0.0, allowIndelsB, wildcard);
+				if(inputFileR != null && checkReversedReads)
+					enzymeTableR = new EnzymeTable(sampleEnzymesR, maxBarcodeEnd(reversedBarcodes), probB < 0.0, allowIndelsB, wildcard);
+				logWriter.println("Distinct Enzymes: " + enzymeTableF.size() + (enzymeTableR == null ? "" : " + " + enzymeTableR.size()));
+				
+				//the files are only pooled if there are too many to keep open, so runs with fewer samples write to their files directly
+				long sampleFiles = (long)sampleBarcodeF.size() * (1 + (indexFileF != null ? 1 : 0) + (!mergePairedEnds && inputFileR != null ? 1 + (indexFileR != null ? 1 : 0) : 0));
+				if(maxOpenFiles > 0 && sampleFiles > maxOpenFiles)
+					outputPool = new OutputPool(maxOpenFiles);
+				logWriter.println("Sample Output Files: " + sampleFiles);
+				logWriter.println("Max Open Sample Files: " + (outputPool == null ? "no limit" : outputPool.maxOpen()));
+				logWriter.println();
+			}
+			
 			if(sampleInfoFile != null && probB < 0.0){ //generate pattern masks for edit based matching
-				barcodePatternsF = new ArrayList<HashMap<Character, BitVector>>();
+				barcodePatternsF = new ArrayList<BitVector[]>();
 				for(int i = 0; i < sampleBarcodeF.size(); i++){
 					barcodePatternsF.add(UtilMethods.genPatternMasks(sampleBarcodeF.get(i), allowIndelsB, wildcard));
 				}
 				
-				enzymePatternsF = new ArrayList<ArrayList<HashMap<Character, BitVector>>>();
-				for(int i = 0; i < sampleEnzymesF.size(); i++){
-					enzymePatternsF.add(new ArrayList<HashMap<Character, BitVector>>());
-					for(int j = 0; j < sampleEnzymesF.get(i).size(); j++){
-						enzymePatternsF.get(i).add(UtilMethods.genPatternMasks(sampleEnzymesF.get(i).get(j), allowIndelsB, wildcard));
-					}
+				indexBarcodes();
+				
+				barcodeGroupsF = BarcodeGroup.group(sampleBarcodeF, wildcard);
+				logWriter.println("Barcode Search Groups: " + barcodeGroupsF.size());
+				barcodeTriesF = buildBarcodeTries(sampleBarcodeF);
+				logWriter.println("Barcode Tries: " + (barcodeTriesF == null ? 0 : barcodeTriesF.length));
+				fusedPatternsF = fusePatterns(sampleBarcodeF, sampleEnzymesF);
+				logWriter.println("Fused Barcode/Enzyme Patterns: " + (fusedPatternsF != null));
+				if(indexFileF == null && demuxCacheSize > 0 && !barcodeIndexesComplete){ //the indexes already find the barcodes in a few lookups
+					demuxCache = new DemuxCache(demuxCacheSize, demuxPrefix(sampleBarcodeF, sampleEnzymesF),
+							inputFileR != null && checkReversedReads ? demuxPrefix(reversedBarcodes, sampleEnzymesR) : 0);
+					logWriter.println("Demultiplex Cache Size: " + demuxCacheSize);
+					logWriter.println("Demultiplex Cache Key Length: " + demuxCache.prefixF() + (demuxCache.prefixR() > 0 ? " + " + demuxCache.prefixR() : ""));
+				}else{
+					logWriter.println("Demultiplex Cache Size: 0");
 				}
+				logWriter.println();
 				
 				if(inputFileR != null && checkReversedReads){
-					barcodePatternsR = new ArrayList<HashMap<Character, BitVector>>();
-					for(int i = 0; i < sampleBarcodeR.size(); i++){
-						barcodePatternsR.add(UtilMethods.genPatternMasks(sampleBarcodeR.get(i), allowIndelsB, wildcard));
-					}
-					
-					enzymePatternsR = new ArrayList<ArrayList<HashMap<Character, BitVector>>>();
-					for(int i = 0; i < sampleEnzymesR.size(); i++){
-						enzymePatternsR.add(new ArrayList<HashMap<Character, BitVector>>());
-						for(int j = 0; j < sampleEnzymesR.get(i).size(); j++){
-							enzymePatternsR.get(i).add(UtilMethods.genPatternMasks(sampleEnzymesR.get(i).get(j), allowIndelsB, wildcard));
-						}
+					barcodePatternsR = new ArrayList<BitVector[]>();
+					for(int i = 0; i < reversedBarcodes.size(); i++){
+						barcodePatternsR.add(UtilMethods.genPatternMasks(reversedBarcodes.get(i), allowIndelsB, wildcard));
 					}
 				}
 			}
 			
 			if(probA < 0.0){
-				adapterPatternsF = new ArrayList<HashMap<Character, BitVector>>();
+				adapterPatternsF = new ArrayList<BitVector[]>();
 				for(int i = 0; i < adaptersF.size(); i++){
 					adapterPatternsF.add(UtilMethods.genPatternMasks(adaptersF.get(i).isStart ? adaptersF.get(i).str : UtilMethods.reverse(adaptersF.get(i).str), allowIndelsA, wildcard));
 				}
 				
 				if(inputFileR != null){
-					adapterPatternsR = new ArrayList<HashMap<Character, BitVector>>();
+					adapterPatternsR = new ArrayList<BitVector[]>();
 					for(int i = 0; i < adaptersR.size(); i++){
 						adapterPatternsR.add(UtilMethods.genPatternMasks(adaptersR.get(i).isStart ? adaptersR.get(i).str : UtilMethods.reverse(adaptersR.get(i).str), allowIndelsA, wildcard));
 					}
@@ -483,9 +572,11 @@ public class FastQParseMain {
 				
 				logWriter.println();
 				logWriter.println("Processing Completed.");
-				File tempFile = new File(outputDir + "temp" + File.separatorChar);
-				if(tempFile.exists())
-					UtilMethods.deleteFolder(tempFile);
+				if(!stdoutOutput){
+					File tempFile = new File(outputDir + "temp" + File.separatorChar);
+					if(tempFile.exists())
+						UtilMethods.deleteFolder(tempFile);
+				}
 			}
 			
 			logWriter.println();
@@ -496,86 +587,28 @@ public class FastQParseMain {
 			logWriter.println("Number of Generated Sample Files: " + generatedSampleFiles);
 			logWriter.println("Number of Generated Duplicate Files: " + generatedDupFiles);
 			
-			//fill in info for total stats
-			map = new EnumMap<Stat, String>(Stat.class);
-			map.put(Stat.SEQUENCE_FORWARDS, "");
-			if(hasReversedBarcode)
-				map.put(Stat.SEQUENCE_REVERSED, "");
-			map.put(Stat.SEQUENCE_COUNT, DECIMAL_FORMAT.format(totalReadsProcessed.sum()));
-			map.put(Stat.SEQUENCE_PERCENT, DECIMAL_FORMAT.format(1));
-			map.put(Stat.MERGED_COUNT, DECIMAL_FORMAT.format(totalReadsMerged.sum()));
-			map.put(Stat.MERGED_PERCENT, DECIMAL_FORMAT.format((double)totalReadsMerged.sum() / (double)totalReadsProcessed.sum()));
-			map.put(Stat.DEDUP_COUNT, DECIMAL_FORMAT.format(duplicatesRemoved));
-			map.put(Stat.DEDUP_PERCENT, DECIMAL_FORMAT.format((double)duplicatesRemoved / (double)totalReadsProcessed.sum()));
-			map.put(Stat.REMOVEADAPTER_COUNT, DECIMAL_FORMAT.format(totalRemovedAdapters.sum()));
-			map.put(Stat.REMOVEADAPTER_PERCENT, DECIMAL_FORMAT.format((double)totalRemovedAdapters.sum() / (double)totalReadsProcessed.sum()));
-			map.put(Stat.QUALITYTRIM_COUNT, DECIMAL_FORMAT.format(totalQualityTrimmed.sum()));
-			map.put(Stat.QUALITYTRIM_PERCENT, DECIMAL_FORMAT.format((double)totalQualityTrimmed.sum() / (double)totalReadsProcessed.sum()));
-			map.put(Stat.BASE_COUNT, DECIMAL_FORMAT.format(baseCount.sum()));
-			map.put(Stat.BASE_PERCENT, DECIMAL_FORMAT.format(1));
-			stats.put("Total", map);
-			
-			//print stats file with cool padding
-			int width = 25;
-			int space = 1;
-			
-			PrintWriter statsWriter = new PrintWriter(new BufferedWriter(new FileWriter(outputDir + "FastQParse_" + mode.description2 + ".stats"), BUFFER_SIZE_LOG));
-			StringBuilder builder = new StringBuilder();
-			String colTitle1 = sampleInfoFile == null ? "File" : "Sample";
-			builder.append(colTitle1);
-			for(int i = 0; i < width - colTitle1.length(); i++){
-				builder.append(' ');
+			updateTotalStats();
+			
+			writeStats(mode);
+			
+			if(demuxCache != null){
+				logWriter.println();
+				demuxCache.print(logWriter, DECIMAL_FORMAT);
+				logWriter.flush();
 			}
-			for(Stat column : map.keySet()){
-				for(int i = 0; i < space; i++){
-					builder.append(' ');
-				}
-				builder.append(column.description);
-				for(int i = 0; i < width - column.description.length(); i++){
-					builder.append(' ');
-				}
+			
+			if(outputPool != null){
+				logWriter.println();
+				outputPool.print(logWriter, DECIMAL_FORMAT);
+				logWriter.flush();
 			}
-			statsWriter.println(builder.toString());
-			if(sampleInfoFile == null){
-				String[] rows = {"Kept", "Undetermined", "Total"};
-				for(String row : rows){
-					builder = new StringBuilder();
-					builder.append(row);
-					for(int j = 0; j < width - row.length(); j++){
-						builder.append(' ');
-					}
-					for(String item : stats.get(row).values()){
-						for(int j = 0; j < space; j++){
-							builder.append(' ');
-						}
-						builder.append(item);
-						for(int j = 0; j < width - item.length(); j++){
-							builder.append(' ');
-						}
-					}
-					statsWriter.println(builder.toString());
-				}
-			}else{
-				for(int i = 0; i < sampleBarcodeF.size() + 2; i++){
-					String row = i == sampleBarcodeF.size() ? "Undetermined" : (i == sampleBarcodeF.size() + 1 ? "Total" : sampleMapF.get(sampleBarcodeF.get(i)));
-					builder = new StringBuilder();
-					builder.append(row);
-					for(int j = 0; j < width - row.length(); j++){
-						builder.append(' ');
-					}
-					for(String item : stats.get(row).values()){
-						for(int j = 0; j < space; j++){
-							builder.append(' ');
-						}
-						builder.append(item);
-						for(int j = 0; j < width - item.length(); j++){
-							builder.append(' ');
-						}
-					}
-					statsWriter.println(builder.toString());
-				}
+			
+			if(allocationBudget != null){
+				logWriter.println();
+				allocationBudget.print(logWriter, DECIMAL_FORMAT);
+				logWriter.flush();
+				allocationBudget.check(DECIMAL_FORMAT);
 			}
-			statsWriter.close();
 		}else if(mode == Mode.SIM_READS){
 			if(simMerging){
 				simMergingReads();
@@ -589,6 +622,98 @@ public class FastQParseMain {
 		}
 	}
 	
+	//decides how barcodes can be looked up instead of searched for, and builds the lookup tables
+	//a lookup can only replace searching if every match it could miss would lose to the matches it finds
+	//so matches that overlap the start of the read are not allowed, and neither are wildcard barcodes
+	private void indexBarcodes() throws Exception{
+		boolean exact = editMaxB >= 0.0 && editMaxB < 1.0; //no edits are allowed, so the exact barcodes are the only matches
+		if(indexFileF == null){
+			//the barcode set does not make a lookup safe on its own, since the rest of the read can be anything, but collisions are worth knowing about
+			BarcodeSetAnalysis analysis = new BarcodeSetAnalysis(sampleBarcodeF, editMaxB, wildcard);
+			analysis.print(logWriter, sampleBarcodeF, sampleMapF);
+			boolean auto = demuxStrategy.equals("auto");
+			
+			//if the barcodes can only be at the start of the read and only mismatches are allowed, then the neighbors of the barcodes are all of their matches
+			//with equal length barcodes and no collisions, each neighbor is only for one sample
+			if((auto || demuxStrategy.equals("neighbors")) && !allowIndelsB && maxOffsetB == 0){
+				barcodeIndexes = indexBarcodes(sampleBarcodeF, minOverlapB, true);
+				barcodeIndexesComplete = barcodeIndexes != null;
+			}
+			//otherwise, exact barcodes are looked up at every offset first
+			//with edits allowed, the matches with edits only matter when checking for multiple barcode matches, since an exact match beats them
+			if((auto || demuxStrategy.equals("exact")) && barcodeIndexes == null && (exact || !singleBarcodeMatchOnly)){
+				barcodeIndexes = indexBarcodes(sampleBarcodeF, minOverlapB, false);
+				barcodeIndexesComplete = exact;
+			}
+			logWriter.println("Barcode Lookup: " + (barcodeIndexes == null ? "none" : (barcodeIndexesComplete ? "all matches" : "exact matches first")));
+			//with offsets, there are many places to look up each barcode, but only a few enzymes that must be after them
+			//so the enzymes are found first, and the barcodes are only looked up at the places right before the enzymes
+			if((auto || demuxStrategy.equals("anchored")) && !barcodeIndexesComplete && !allowIndelsB && maxOffsetB > 0){
+				anchorEnzymes = new ArrayList<BarcodeGroup>();
+				ArrayList<String> enzymes = new ArrayList<String>();
+				for(int i = 0; i < enzymeTableF.size(); i++)
+					enzymes.add(enzymeTableF.enzyme(i));
+				int grouped = 0;
+				for(BarcodeGroup group : BarcodeGroup.group(enzymes, wildcard)){
+					anchorEnzymes.add(group);
+					grouped += group.samples.length;
+				}
+				//every enzyme must be searched for, or else some barcodes would be missed
+				anchorIndexes = grouped == enzymes.size() ? indexBarcodes(sampleBarcodeF, minOverlapB, true) : null;
+				anchorEnd = demuxPrefix(sampleBarcodeF, sampleEnzymesF);
+			}
+			logWriter.println("Enzyme Anchored Barcode Lookup: " + (anchorIndexes != null));
+			
+			String strategy = "search";
+			if(barcodeIndexesComplete)
+				strategy = exact ? "exact" : "neighbors";
+			else if(anchorIndexes != null)
+				strategy = "anchored";
+			else if(barcodeIndexes != null)
+				strategy = "exact";
+			if(!auto && !strategy.equals(demuxStrategy))
+				throw new Exception("Demultiplex strategy " + demuxStrategy + " cannot be used with these barcodes and options");
+			logWriter.println("Demultiplex Strategy: " + strategy + (auto ? " (auto)" : ""));
+		}else if(!allowIndelsB || exact){ //index reads always start with the barcode
+			indexBarcodeIndexesF = indexBarcodes(sampleBarcodeF, minOverlapB, true);
+			if(inputFileR != null && checkReversedReads){
+				indexBarcodeIndexesR = hasReversedBarcode ? indexBarcodes(sampleBarcodeR, Integer.MAX_VALUE, true) : null;
+				if(indexBarcodeIndexesR == null)
+					indexBarcodeIndexesF = null;
+			}
+			logWriter.println("Index Barcode Lookup: " + (indexBarcodeIndexesF != null));
+		}
+		logWriter.println();
+	}
+	
+	//builds a lookup table for each barcode length, with the barcodes' neighbors if mismatches are allowed
+	//returns null if some barcode cannot be looked up, or if there would be too many neighbors
+	private BarcodeIndex[] indexBarcodes(ArrayList<String> barcodes, int minOverlap, boolean mismatches){
+		TreeMap<Integer, Integer> lengths = new TreeMap<Integer, Integer>(); //barcode length to max mismatches
+		long size = 0L;
+		for(int i = 0; i < barcodes.size(); i++){
+			String barcode = barcodes.get(i);
+			if(barcode.isEmpty() || barcode.length() > BarcodeIndex.MAX_LENGTH || minOverlap < barcode.length())
+				return null;
+			for(int j = 0; j < barcode.length(); j++){
+				if(wildcard && PackedSequence.code(barcode.charAt(j)) == PackedSequence.N)
+					return null;
+			}
+			int edits = mismatches ? maxEditsB(barcode.length()) : 0;
+			if(edits > BarcodeIndex.MAX_EDITS)
+				return null;
+			lengths.put(barcode.length(), edits);
+			size += BarcodeIndex.neighbors(barcode.length(), edits);
+		}
+		if(size > MAX_BARCODE_INDEX_SIZE)
+			return null;
+		BarcodeIndex[] res = new BarcodeIndex[lengths.size()];
+		int i = 0;
+		for(Map.Entry<Integer, Integer> e : lengths.entrySet())
+			res[i++] = new BarcodeIndex(barcodes, e.getKey(), e.getValue());
+		return res;
+	}
+	
 	//read the sample file for demultiplex
 	private void readSample() throws Exception{
 		BufferedReader reader = new BufferedReader(new FileReader(sampleInfoFile), BUFFER_SIZE_LOG);
@@ -611,6 +736,9 @@ public class FastQParseMain {
 		}
 		
 		reader.close();
+		
+		for(int i = 0; i < sampleBarcodeF.size(); i++)
+			reversedBarcodes.add(hasReversedBarcode ? sampleBarcodeR.get(i) : UtilMethods.complement(sampleBarcodeF.get(i)));
 	}
 	
 	private void simMergingReads() throws Exception{
@@ -1190,54 +1318,117 @@ public class FastQParseMain {
 		logWriter.println("Total\t" + DECIMAL_FORMAT.format(simReversed ? simIter * 2 : simIter));
 	}
 	
+	//opens a .fastq file (gzipped or not) for the byte level record parser
+	//BGZF files and gzipped files with an index are decompressed in parallel, while other gzipped files fall back to GZIPInputStream
+	//files that are being followed are read with FollowInputStream, which waits at the end of the file for more data
+	private static FastQReader openFastQ(File file) throws Exception{
+		if(followInput){
+			InputStream in = new FollowInputStream(file, followEndMarker, followIdleTimeout);
+			if(inputGZIP && BGZFInputStream.isBGZF(file))
+				return new FastQReader(new BGZFInputStream(new BufferedInputStream(in, BUFFER_SIZE_GZIP), getDecompressPool(), THREADS * BGZF_BLOCKS_PER_THREAD), BUFFER_SIZE_FASTQ, true);
+			else if(inputGZIP)
+				return new FastQReader(new GZIPInputStream(in, BUFFER_SIZE_GZIP), BUFFER_SIZE_FASTQ, true);
+			else
+				return new FastQReader(in, BUFFER_SIZE_FASTQ, true);
+		}else if(inputGZIP && BGZFInputStream.isBGZF(file)){
+			return new FastQReader(new BGZFInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE_GZIP), getDecompressPool(), THREADS * BGZF_BLOCKS_PER_THREAD), BUFFER_SIZE_FASTQ);
+		}else if(inputGZIP && gzipIndex){
+			GzipIndex index = GzipIndex.load(file);
+			if(index != null){
+				logWriter.println("Using Gzip Index: " + GzipIndex.indexFile(file).getAbsolutePath());
+				return new FastQReader(new GzipIndexInputStream(file, index, getDecompressPool(), THREADS * 2), BUFFER_SIZE_FASTQ);
+			}else{
+				logWriter.println("Building Gzip Index: " + GzipIndex.indexFile(file).getAbsolutePath());
+				return new FastQReader(new GzipIndexBuilder(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE_GZIP), file, GZIP_INDEX_SPAN), BUFFER_SIZE_FASTQ);
+			}
+		}else if(inputGZIP){
+			return new FastQReader(new GZIPInputStream(new FileInputStream(file), BUFFER_SIZE_GZIP), BUFFER_SIZE_FASTQ);
+		}else{
+			return new FastQReader(new FileInputStream(file), BUFFER_SIZE_FASTQ);
+		}
+	}
+	
+	private static ExecutorService getDecompressPool(){
+		if(decompressPool == null){
+			decompressPool = Executors.newFixedThreadPool(THREADS, (r) -> {
+				Thread t = new Thread(r);
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		return decompressPool;
+	}
+	
+	//writes one .fastq record, the third line is always description2
+	private static void writeRecord(OutputStream out, ByteSlice description, ByteSlice sequence, ByteSlice quality) throws Exception{
+		description.writeTo(out);
+		out.write(NEW_LINE);
+		sequence.writeTo(out);
+		out.write(NEW_LINE);
+		out.write(DESCRIPTION2_BYTES);
+		out.write(NEW_LINE);
+		quality.writeTo(out);
+		out.write(NEW_LINE);
+	}
+	
 	//the ConcurrentLinkedQueue contains strings that represent the output files
 	private ConcurrentLinkedQueue<Strings> processFiles() throws Exception{
-		BufferedReader readerF; //forwards input
-		BufferedReader readerR = null; //reversed input
-		BufferedReader readerIF = null; //forwards index input
-		BufferedReader readerIR = null; //reversed index input
-		if(inputGZIP){
-			readerF = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(inputFileF), BUFFER_SIZE_GZIP)), BUFFER_SIZE);
-			if(indexFileF != null)
-				readerIF = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(indexFileF), BUFFER_SIZE_GZIP)), BUFFER_SIZE);
-			if(inputFileR != null){
-				readerR = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(inputFileR), BUFFER_SIZE_GZIP)), BUFFER_SIZE);
-				if(indexFileR != null)
-					readerIR = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(indexFileR), BUFFER_SIZE_GZIP)), BUFFER_SIZE);
-			}
+		int lanes = inputFilesF.length;
+		//uncompressed input is memory mapped and split into ranges when running in parallel, so every thread can parse reads
+		ArrayList<MappedReadSpliterator<Read>> mappedSpliterators = null;
+		//otherwise, each file gets its own thread for decompressing and parsing
+		//every lane is opened right away, so all lanes are read at the same time
+		FastQPrefetcher[] readersF = new FastQPrefetcher[lanes]; //forwards input
+		FastQPrefetcher[] readersR = new FastQPrefetcher[lanes]; //reversed input
+		FastQPrefetcher[] readersIF = new FastQPrefetcher[lanes]; //forwards index input
+		FastQPrefetcher[] readersIR = new FastQPrefetcher[lanes]; //reversed index input
+		if(stdinInput){
+			readersF[0] = new FastQPrefetcher(new FastQReader(inputGZIP ? new GZIPInputStream(stdin, BUFFER_SIZE_GZIP) : stdin, BUFFER_SIZE_FASTQ), "stdin", PREFETCH_BATCH_SIZE, PREFETCH_BATCHES);
+			if(inputFileR != null) //interleaved, so the forwards and reversed reads alternate
+				readersR[0] = readersF[0];
+		}else if(parallel && !inputGZIP && !followInput && !indexFirst){
+			mappedSpliterators = new ArrayList<MappedReadSpliterator<Read>>();
+			for(int i = 0; i < lanes; i++)
+				mappedSpliterators.add(new MappedReadSpliterator<Read>(BUFFER_SIZE_FASTQ, inputFilesF[i], inputFileR == null ? null : inputFilesR[i],
+						indexFileF == null ? null : indexFilesF[i], inputFileR == null || indexFileR == null ? null : indexFilesR[i]));
 		}else{
-			readerF = new BufferedReader(new FileReader(inputFileF), BUFFER_SIZE);
-			if(indexFileF != null)
-				readerIF = new BufferedReader(new FileReader(indexFileF), BUFFER_SIZE);
-			if(inputFileR != null){
-				readerR = new BufferedReader(new FileReader(inputFileR), BUFFER_SIZE);
-				if(indexFileR != null)
-					readerIR = new BufferedReader(new FileReader(indexFileR), BUFFER_SIZE);
+			for(int i = 0; i < lanes; i++){
+				String lane = lanes > 1 ? "L" + (i + 1) + "_" : "";
+				readersF[i] = new FastQPrefetcher(openFastQ(inputFilesF[i]), lane + "R1", PREFETCH_BATCH_SIZE, PREFETCH_BATCHES, followInput);
+				if(indexFileF != null)
+					readersIF[i] = new FastQPrefetcher(openFastQ(indexFilesF[i]), lane + "I1", PREFETCH_BATCH_SIZE, PREFETCH_BATCHES, followInput);
+				if(inputFileR != null){
+					readersR[i] = new FastQPrefetcher(openFastQ(inputFilesR[i]), lane + "R2", PREFETCH_BATCH_SIZE, PREFETCH_BATCHES, followInput);
+					if(indexFileR != null)
+						readersIR[i] = new FastQPrefetcher(openFastQ(indexFilesR[i]), lane + "I2", PREFETCH_BATCH_SIZE, PREFETCH_BATCHES, followInput);
+				}
 			}
 		}
 		
 		//if not demultiplexing, then the array sizes should be 1
 		//all writers need to be initialized right here or else Java will complain about them changing in the lambda statement
-		BufferedWriter[] writersF = new BufferedWriter[sampleInfoFile == null ? 1 : sampleMapF.size()]; //forwards output
-		BufferedWriter[] writersR = !mergePairedEnds && inputFileR != null ? new BufferedWriter[sampleInfoFile == null ? 1 : sampleMapF.size()] : null; //reversed output
-		BufferedWriter[] writersIF = indexFileF != null ? new BufferedWriter[sampleInfoFile == null ? 1 : sampleMapF.size()] : null; //forwards index output
-		BufferedWriter[] writersIR = !mergePairedEnds && inputFileR != null && indexFileR != null ? new BufferedWriter[sampleInfoFile == null ? 1 : sampleMapF.size()] : null; //reversed index output
+		OutputStream[] writersF = new OutputStream[sampleInfoFile == null ? 1 : sampleMapF.size()]; //forwards output
+		OutputStream[] writersR = !mergePairedEnds && inputFileR != null ? new OutputStream[sampleInfoFile == null ? 1 : sampleMapF.size()] : null; //reversed output
+		OutputStream[] writersIF = indexFileF != null ? new OutputStream[sampleInfoFile == null ? 1 : sampleMapF.size()] : null; //forwards index output
+		OutputStream[] writersIR = !mergePairedEnds && inputFileR != null && indexFileR != null ? new OutputStream[sampleInfoFile == null ? 1 : sampleMapF.size()] : null; //reversed index output
 		
-		BufferedWriter[] undeterminedWriterF = new BufferedWriter[2]; //for forwards and forwards index undetermined reads
-		BufferedWriter[] undeterminedWriterR = inputFileR != null ? new BufferedWriter[2] : null; //for reversed and reversed index undetermined reads
+		OutputStream[] undeterminedWriterF = new OutputStream[2]; //for forwards and forwards index undetermined reads
+		OutputStream[] undeterminedWriterR = inputFileR != null ? new OutputStream[2] : null; //for reversed and reversed index undetermined reads
 		
 		ConcurrentLinkedQueue<Strings> files = new ConcurrentLinkedQueue<Strings>();
-		//LongAdders to keep track of stats
-		LongAdder[][] readCounts = new LongAdder[(sampleInfoFile == null ? 1 : sampleMapF.size()) + 1][5];
+		//LongAdders to keep track of stats for each lane
+		LongAdder[][][] laneCounts = new LongAdder[lanes][(sampleInfoFile == null ? 1 : sampleMapF.size()) + 1][5];
 		//0 = read count
 		//1 = base pair count
 		//2 = number of merged reads
 		//3 = number of reads with removed adapters
 		//4 = number of quality trimmed reads
 		//note that forwards and reversed reads will contribute to the counts
-		for(int i = 0; i < readCounts.length; i++){
-			for(int j = 0; j < readCounts[i].length; j++){
-				readCounts[i][j] = new LongAdder();
+		for(int i = 0; i < laneCounts.length; i++){
+			for(int j = 0; j < laneCounts[i].length; j++){
+				for(int k = 0; k < laneCounts[i][j].length; k++){
+					laneCounts[i][j][k] = new LongAdder();
+				}
 			}
 		}
 		//Objects are used as locks
@@ -1247,533 +1438,114 @@ public class FastQParseMain {
 			locks[i] = new Object();
 		}
 		
-		StreamSupport.stream(new ReadSpliterator<Read>(splitBatchSize, readerF, readerR, readerIF, readerIR), parallel).forEach((read) -> {
-			totalReadsProcessed.add(inputFileR == null ? 1 : 2);
-			
-			boolean valid = false; //undetermined or not
-			
-			//if this is supported in parallel then the logWriter needs to be synchronized
-			//easier and faster to just not print
-			if(!parallel && totalReadsProcessed.sum() % printProcessedInterval == 0){
-				logWriter.println("Reads Processed So Far: " + DECIMAL_FORMAT.format(totalReadsProcessed));
-				logWriter.println("Run Time So Far: " + UtilMethods.formatElapsedTime(System.currentTimeMillis() - startTime));
-				logWriter.println("Current Memory Usage (GB): " + DECIMAL_FORMAT.format(UtilMethods.currentMemoryUsage()));
-				logWriter.flush();
-			}
-			
-			//save the quality and sequence lines so the undetermined reads are not modified
-			String tempSequenceF = read.readF[1];
-			String tempQualityF = read.readF[3];
-			String tempSequenceR = null;
-			String tempQualityR = null;
-			if(inputFileR != null){
-				tempSequenceR = read.readR[1];
-				tempQualityR = read.readR[3];
-			}
-			
-			//check the percentage of N
-			if(maxNPercent > 1.0 || (maxNPercent >= 0.0 && UtilMethods.percentN(read.readF[1]) <= maxNPercent && (inputFileR == null || UtilMethods.percentN(read.readR[1]) <= maxNPercent)) ||
-					(maxNPercent < 0.0 && UtilMethods.countN(read.readF[1]) <= 0 && (inputFileR == null || UtilMethods.countN(read.readR[1]) <= 0))){
-				int barcodeIndex = -1;
-				int barcodeEnd = -1;
-				int barcodeLength = 0;
-				int enzymeEnd = -1;
-				int barcodeEnd2 = -1;
-				int enzymeEnd2 = -1;
-				int minEdit = Integer.MAX_VALUE;
-				int barcodeMatchCount = 0; //used for checking if a read matches multiple barcodes
-				
-				if(sampleInfoFile != null){ //only if there are barcodes
-					if(indexFileF == null){ //check for enzyme and barcode in reads, in the following order: forwards barcode, forwards enzyme, reversed barcode, reversed enzyme
-						for(int i = 0; i < sampleBarcodeF.size(); i++){ //a barcode match is a barcode match if there is an enzyme after it
-							ArrayList<Match> matches = null;
-							if(probB < 0.0){
-								matches = UtilMethods.searchWithN(read.readF[1], 0, Math.min(read.readF[1].length(), maxOffsetB + sampleBarcodeF.get(i).length() +
-										(probB < 0.0 && allowIndelsB ? (editMaxB < 0.0 ? (int)(-editMaxB * sampleBarcodeF.get(i).length()) : (int)editMaxB) : 0)), sampleBarcodeF.get(i), editMaxB, allowIndelsB, false, minOverlapB, wildcard, barcodePatternsF.get(i));
-							}else{
-								matches = UtilMethods.searchWithProb(read.readF[1], 0, Math.min(read.readF[1].length(), maxOffsetB + sampleBarcodeF.get(i).length() +
-										(probB < 0.0 && allowIndelsB ? (editMaxB < 0.0 ? (int)(-editMaxB * sampleBarcodeF.get(i).length()) : (int)editMaxB) : 0)), read.readF[3], sampleBarcodeF.get(i), null, probB, minOverlapB, wildcard);
-							}
-							boolean isMatch = false;
-							for(int j = 0; j < matches.size(); j++){
-								for(int k = 0; k < sampleEnzymesF.get(i).size(); k++){
-									ArrayList<Match> enzymeMatches = null;
-									if(probB < 0.0){
-										enzymeMatches = UtilMethods.searchWithN(read.readF[1], matches.get(j).end + 1/* + randUMILength*/, Math.min(read.readF[1].length(), maxOffsetB + matches.get(j).end + 1 + /*randUMILength + */sampleEnzymesF.get(i).get(k).length() +
-												(probB < 0.0 && allowIndelsB ? (editMaxB < 0.0 ? (int)(-editMaxB * sampleEnzymesF.get(i).get(k).length()) : (int)editMaxB) : 0)), sampleEnzymesF.get(i).get(k), editMaxB, allowIndelsB, true, Integer.MAX_VALUE, wildcard, enzymePatternsF.get(i).get(k));
-									}else{
-										enzymeMatches = UtilMethods.searchWithProb(read.readF[1], matches.get(j).end + 1/* + randUMILength*/, Math.min(read.readF[1].length(), maxOffsetB + matches.get(j).end + 1 + /*randUMILength + */sampleEnzymesF.get(i).get(k).length() +
-												(probB < 0.0 && allowIndelsB ? (editMaxB < 0.0 ? (int)(-editMaxB * sampleEnzymesF.get(i).get(k).length()) : (int)editMaxB) : 0)), read.readF[3], sampleEnzymesF.get(i).get(k), null, probB, minOverlapB, wildcard);
-									}
-									if(!enzymeMatches.isEmpty()){
-										int tempBarcodeEnd2 = -1;
-										int tempBarcodeLength2 = 0;
-										int tempEnzymeEnd2 = -1;
-										if(inputFileR != null && checkReversedReads){
-											int minEdit2 = Integer.MAX_VALUE;
-											ArrayList<Match> rMatches = null; //check for the reversed barcode and enzyme
-											if(probB < 0.0){
-												rMatches = UtilMethods.searchWithN(read.readR[1], 0, Math.min(read.readR[1].length(), maxOffsetB + (hasReversedBarcode ? sampleBarcodeR.get(i).length() : sampleBarcodeF.get(i).length()) +
-														(probB < 0.0 && allowIndelsB ? (editMaxB < 0.0 ? (int)(-editMaxB * (hasReversedBarcode ? sampleBarcodeR.get(i).length() : sampleBarcodeF.get(i).length())) : (int)editMaxB) : 0)),
-														hasReversedBarcode ? sampleBarcodeR.get(i) : UtilMethods.complement(sampleBarcodeF.get(i)), editMaxB, allowIndelsB, false, minOverlapB, wildcard, barcodePatternsR.get(i));
-											}else{
-												rMatches = UtilMethods.searchWithProb(read.readR[1], 0, Math.min(read.readR[1].length(), maxOffsetB + (hasReversedBarcode ? sampleBarcodeR.get(i).length() : sampleBarcodeF.get(i).length()) +
-														(probB < 0.0 && allowIndelsB ? (editMaxB < 0.0 ? (int)(-editMaxB * (hasReversedBarcode ? sampleBarcodeR.get(i).length() : sampleBarcodeF.get(i).length())) : (int)editMaxB) : 0)), read.readR[3],
-														hasReversedBarcode ? sampleBarcodeR.get(i) : UtilMethods.complement(sampleBarcodeF.get(i)), null, probB, minOverlapB, wildcard);
-											}
-											for(int ri = 0; ri < rMatches.size(); ri++){
-												for(int rj = 0; rj < sampleEnzymesR.get(i).size(); rj++){
-													ArrayList<Match> rEnzymeMatches = null;
-													if(probB < 0.0){
-														rEnzymeMatches = UtilMethods.searchWithN(read.readR[1], rMatches.get(ri).end + 1/* + randUMILength*/, Math.min(read.readR[1].length(), maxOffsetB + rMatches.get(ri).end + 1 + /*randUMILength + */sampleEnzymesR.get(i).get(rj).length() +
-																(probB < 0.0 && allowIndelsB ? (editMaxB < 0.0 ? (int)(-editMaxB * sampleEnzymesR.get(i).get(rj).length()) : (int)editMaxB) : 0)), sampleEnzymesR.get(i).get(rj), editMaxB, allowIndelsB, true, Integer.MAX_VALUE, wildcard, enzymePatternsR.get(i).get(rj));
-													}else{
-														rEnzymeMatches = UtilMethods.searchWithProb(read.readR[1], rMatches.get(ri).end + 1/* + randUMILength*/, Math.min(read.readR[1].length(), maxOffsetB + rMatches.get(ri).end + 1 + /*randUMILength + */sampleEnzymesR.get(i).get(rj).length() +
-																(probB < 0.0 && allowIndelsB ? (editMaxB < 0.0 ? (int)(-editMaxB * sampleEnzymesR.get(i).get(rj).length()) : (int)editMaxB) : 0)), read.readR[3], sampleEnzymesR.get(i).get(rj), null, probB, minOverlapB, wildcard);
-													}
-													if(!rEnzymeMatches.isEmpty()){
-														if(rMatches.get(ri).edits <= minEdit2 && (rMatches.get(ri).edits < minEdit2 || rMatches.get(ri).length > tempBarcodeLength2)){
-															tempBarcodeEnd2 = rMatches.get(ri).end + 1;
-															tempBarcodeLength2 = rMatches.get(ri).length;
-															tempEnzymeEnd2 = rEnzymeMatches.get(rEnzymeMatches.size() - 1).end + 1;
-															minEdit2 = rMatches.get(ri).edits;
-															break;
-														}
-													}
-												}
-											}
-										}
-										
-										if(inputFileR == null || !checkReversedReads || tempEnzymeEnd2 != -1){
-											isMatch = true;
-											if(matches.get(j).edits <= minEdit && (matches.get(j).edits < minEdit || matches.get(j).length > barcodeLength)){
-												//if all checks are passed, then the current barcodes/enzymes are saved as the matched barcodes/enzymes
-												//this state may be reached by multiple different match locations or different barcodes/enzymes, but the best location is chosen
-												barcodeIndex = i;
-												barcodeEnd = matches.get(j).end + 1;
-												barcodeLength = matches.get(j).length;
-												enzymeEnd = enzymeMatches.get(enzymeMatches.size() - 1).end + 1;
-												if(inputFileR != null){
-													if(checkReversedReads){
-														barcodeEnd2 = tempBarcodeEnd2;
-														enzymeEnd2 = tempEnzymeEnd2;
-													}else{
-														barcodeEnd2 = Math.max(0, Math.min(read.readR[1].length(), barcodeEnd/* - randUMILength*/));
-														enzymeEnd2 = Math.max(0, Math.min(read.readR[1].length(), enzymeEnd/* - randUMILength*/));
-													}
-												}
-												minEdit = matches.get(j).edits;
-												break;
-											}
-										}
-									}
-								}
-							}
-							if(isMatch){
-								if(singleBarcodeMatchOnly && barcodeMatchCount >= 1){
-									barcodeIndex = -1;
-									break;
-								}
-								barcodeMatchCount++;
-							}
-						}
-					}else{ //check for barcode in index reads
-						for(int i = 0; i < sampleBarcodeF.size(); i++){
-							ArrayList<Match> matches = null;
-							if(probB < 0.0){
-								matches = UtilMethods.searchWithN(read.readIF[1], 0, Math.min(read.readIF[1].length(), sampleBarcodeF.get(i).length() +
-										(probB < 0.0 && allowIndelsB ? (editMaxB < 0.0 ? (int)(-editMaxB * sampleBarcodeF.get(i).length()) : (int)editMaxB) : 0)),
-										sampleBarcodeF.get(i), editMaxB, allowIndelsB, true, minOverlapB, wildcard, barcodePatternsF.get(i));
-							}else{
-								matches = UtilMethods.searchWithProb(read.readIF[1], 0, Math.min(read.readIF[1].length(), sampleBarcodeF.get(i).length() +
-										(probB < 0.0 && allowIndelsB ? (editMaxB < 0.0 ? (int)(-editMaxB * sampleBarcodeF.get(i).length()) : (int)editMaxB) : 0)),
-										read.readIF[3], sampleBarcodeF.get(i), null, probB, minOverlapB, wildcard);
-							}
-							if(!matches.isEmpty()){
-								ArrayList<Match> rMatches = null; //check reversed reads for barcode matches
-								if(inputFileR != null && checkReversedReads){
-									if(probB < 0.0){
-										rMatches = UtilMethods.searchWithN(read.readIR[1], randUMILength, Math.min(read.readIR[1].length(), randUMILength +
-												(hasReversedBarcode ? sampleBarcodeR.get(i).length() : sampleBarcodeF.get(i).length()) + (probB < 0.0 && allowIndelsB ?
-														(editMaxB < 0.0 ? (int)(-editMaxB * (hasReversedBarcode ? sampleBarcodeR.get(i).length() : sampleBarcodeF.get(i).length())) : (int)editMaxB) : 0)),
-												hasReversedBarcode ? sampleBarcodeR.get(i) : UtilMethods.complement(sampleBarcodeF.get(i)), editMaxB, allowIndelsB, true, Integer.MAX_VALUE, wildcard, barcodePatternsR.get(i));
-									}else{
-										rMatches = UtilMethods.searchWithProb(read.readIR[1], randUMILength, Math.min(read.readIR[1].length(), randUMILength +
-												(hasReversedBarcode ? sampleBarcodeR.get(i).length() : sampleBarcodeF.get(i).length()) + (probB < 0.0 && allowIndelsB ?
-														(editMaxB < 0.0 ? (int)(-editMaxB * (hasReversedBarcode ? sampleBarcodeR.get(i).length() : sampleBarcodeF.get(i).length())) : (int)editMaxB) : 0)),
-												read.readIR[3], hasReversedBarcode ? sampleBarcodeR.get(i) : UtilMethods.complement(sampleBarcodeF.get(i)), null, probB, minOverlapB, wildcard);
-									}
-								}
-								if((inputFileR == null || !checkReversedReads || !rMatches.isEmpty()) && matches.get(matches.size() - 1).edits <= minEdit && (matches.get(matches.size() - 1).edits < minEdit || matches.get(matches.size() - 1).end + 1 > barcodeEnd)){
-									barcodeIndex = i;
-									barcodeEnd = matches.get(matches.size() - 1).end + 1;
-									minEdit = matches.get(matches.size() - 1).edits;
-								}
-								if(singleBarcodeMatchOnly && barcodeMatchCount >= 1){
-									barcodeIndex = -1;
-									break;
-								}
-								barcodeMatchCount++;
-							}
-						}
-					}
-				}
-				
-				if(sampleInfoFile == null || barcodeIndex != -1){ //no sample file or if barcodes and enzymes were found in the read
-					//check if the quality is good enough
-					boolean qualityAcceptable;
-					if(filterAlgorithm){
-						qualityAcceptable = UtilMethods.toError(read.readF[3], 0) <= qualityFilter && (inputFileR == null || UtilMethods.toError(read.readR[3], 0) <= qualityFilter);
-					}else{
-						qualityAcceptable = UtilMethods.toQScore(read.readF[3], 0) >= qualityFilter && (inputFileR == null || UtilMethods.toQScore(read.readR[3], 0) >= qualityFilter);
-					}
-					
-					if(qualityAcceptable){
-						//remove barcode and enzyme
-						if(sampleInfoFile != null){
-							if(indexFileF == null){
-								if(removeEnzyme && removeBarRand){
-									read.readF[1] = read.readF[1].substring(enzymeEnd);
-									read.readF[3] = read.readF[3].substring(enzymeEnd);
-								}else if(removeEnzyme){
-									read.readF[1] = read.readF[1].substring(0, barcodeEnd/* + randUMILength*/) + read.readF[1].substring(enzymeEnd);
-									read.readF[3] = read.readF[3].substring(0, barcodeEnd/* + randUMILength*/) + read.readF[3].substring(enzymeEnd);
-								}else if(removeBarRand){
-									read.readF[1] = read.readF[1].substring(barcodeEnd/* + randUMILength*/);
-									read.readF[3] = read.readF[3].substring(barcodeEnd/* + randUMILength*/);
-								}
-							}
-							
-							if(inputFileR != null){
-								if(indexFileR == null){
-									if(removeEnzyme && removeBarRand){
-										read.readR[1] = read.readR[1].substring(enzymeEnd2);
-										read.readR[3] = read.readR[3].substring(enzymeEnd2);
-									}else if(removeEnzyme){
-										read.readR[1] = read.readR[1].substring(0, barcodeEnd2) + read.readR[1].substring(enzymeEnd2);
-										read.readR[3] = read.readR[3].substring(0, barcodeEnd2) + read.readR[3].substring(enzymeEnd2);
-									}else if(removeBarRand){
-										read.readR[1] = read.readR[1].substring(barcodeEnd2);
-										read.readR[3] = read.readR[3].substring(barcodeEnd2);
-									}
-								}
-							}
-						}
-						
-						//these temp arrays are needed to check if a read is trimmed
-						String[] temp;
-						String[] qualityTrimmed;
-						
-						int trimmedQuality = 0;
-						int removedAdapter = 0;
-						
-						//trim N
-						temp = UtilMethods.trimN(read.readF[1], read.readF[3], trimNPercent);
-						read.readF[1] = temp[0];
-						read.readF[3] = temp[1];
-						
-						//quality trim
-						if(trimAlgorithm){
-							temp = UtilMethods.qualityTrim2(read.readF[1], read.readF[3], qualityTrimQScore1, true, qualityTrimLength);
-							qualityTrimmed = UtilMethods.qualityTrim2(temp[0], temp[1], qualityTrimQScore2, false, qualityTrimLength);
-						}else{
-							temp = UtilMethods.qualityTrim1(read.readF[1], read.readF[3], qualityTrimQScore1, true, qualityTrimLength);
-							qualityTrimmed = UtilMethods.qualityTrim1(temp[0], temp[1], qualityTrimQScore2, false, qualityTrimLength);
-						}
-						if(read.readF[1].length() != qualityTrimmed[0].length()){
-							trimmedQuality++;
-						}
-						//remove adapters
-						String[] removedAdapters = UtilMethods.removeAdapters(qualityTrimmed[0], qualityTrimmed[1], adaptersF, editMaxA, minOverlapA, maxOffsetA, allowIndelsA, probA, wildcard, adapterPatternsF);
-						if(qualityTrimmed[0].length() != removedAdapters[0].length()){
-							removedAdapter++;
-						}
-						read.readF[1] = removedAdapters[0];
-						read.readF[3] = removedAdapters[1];
-						
-						//do the same for reversed reads
-						if(inputFileR != null){
-							temp = UtilMethods.trimN(read.readR[1], read.readR[3], trimNPercent);
-							read.readR[1] = temp[0];
-							read.readR[3] = temp[1];
-							
-							if(trimAlgorithm){
-								temp = UtilMethods.qualityTrim2(read.readR[1], read.readR[3], qualityTrimQScore1, true, qualityTrimLength);
-								qualityTrimmed = UtilMethods.qualityTrim2(temp[0], temp[1], qualityTrimQScore2, false, qualityTrimLength);
-							}else{
-								temp = UtilMethods.qualityTrim1(read.readR[1], read.readR[3], qualityTrimQScore1, true, qualityTrimLength);
-								qualityTrimmed = UtilMethods.qualityTrim1(temp[0], temp[1], qualityTrimQScore2, false, qualityTrimLength);
-							}
-							if(read.readR[1].length() != qualityTrimmed[0].length()){
-								trimmedQuality++;
-							}
-							removedAdapters = UtilMethods.removeAdapters(qualityTrimmed[0], qualityTrimmed[1], adaptersR, editMaxA, minOverlapA, maxOffsetA, allowIndelsA, probA, wildcard, adapterPatternsR);
-							if(qualityTrimmed[0].length() != removedAdapters[0].length()){
-								removedAdapter++;
-							}
-							read.readR[1] = removedAdapters[0];
-							read.readR[3] = removedAdapters[1];
-						}
-						
-						boolean mergedReads = false;
-						//merge paired-end reads
-						if(mergePairedEnds && inputFileR != null){
-							String[] merged = UtilMethods.mergeReads(read.readF[1], read.readF[3], read.readR[1], read.readR[3], editMaxM, probM, minOverlapM, wildcard);
-							if(merged[0].length() != read.readF[1].length() + read.readR[1].length()){
-								mergedReads = true;
-							}
-							read.readF[1] = merged[0];
-							read.readF[3] = merged[1];
-						}
-						
-						//check if reads are trimmed or merged and if length is too long or short
-						if((!removeUntrimmedReads || trimmedQuality == (inputFileR == null ? 1 : 2)) && (!removeNoAdapterReads || removedAdapter == (inputFileR == null ? 1 : 2)) && (!removeUnmergedReads || mergedReads) &&
-								minLength <= read.readF[1].length() && read.readF[1].length() <= maxLength && (inputFileR == null || mergePairedEnds || (minLength <= read.readR[1].length() && read.readR[1].length() <= maxLength))){
-							//statistics
-							readCounts[sampleInfoFile == null ? 0 : barcodeIndex][0].add(inputFileR == null ? 1 : 2);
-							
-							readCounts[sampleInfoFile == null ? 0 : barcodeIndex][1].add(read.readF[1].length() + (inputFileR == null || mergePairedEnds ? 0 : read.readR[1].length()));
-							baseCount.add(read.readF[1].length() + (inputFileR == null || mergePairedEnds ? 0 : read.readR[1].length()));
-							
-							readCounts[sampleInfoFile == null ? 0 : barcodeIndex][2].add(mergedReads ? 2 : 0);
-							totalReadsMerged.add(mergedReads ? 2 : 0);
-							
-							readCounts[sampleInfoFile == null ? 0 : barcodeIndex][3].add(removedAdapter);
-							totalRemovedAdapters.add(removedAdapter);
-							
-							readCounts[sampleInfoFile == null ? 0 : barcodeIndex][4].add(trimmedQuality);
-							totalQualityTrimmed.add(trimmedQuality);
-							
-							synchronized(locks[sampleInfoFile == null ? 0 : barcodeIndex]){ //synchronized output per file, so no two threads can write to the same file at the same time
-								try{
-									Strings strings = new Strings();
-									//initialize file writers if they are not already initialized
-									//this lazy initialization will not create files for samples whose barcodes do not exist in any reads
-									if(sampleInfoFile == null){
-										if(writersF[0] == null){ //forwards
-											if(!outputGZIP && !keepFirstDup && !keepBestDup){
-												writersF[0] = new BufferedWriter(new FileWriter(outputDir + "reads_kept_R1.fastq"), BUFFER_SIZE);
-												strings.add(outputDir + "reads_kept_R1.fastq");
-												
-												if(indexFileF != null){
-													writersIF[0] = new BufferedWriter(new FileWriter(outputDir + "index_kept_R1.fastq"), BUFFER_SIZE);
-													strings.add(outputDir + "index_kept_R1.fastq");
-												}
-											}else{
-												writersF[0] = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(((keepFirstDup || keepBestDup) ? (outputDir + "temp" + File.separatorChar) : outputDir) + "reads_kept_R1.fastq.gz"), BUFFER_SIZE_GZIP)), BUFFER_SIZE);
-												strings.add(((keepFirstDup || keepBestDup) ? (outputDir + "temp" + File.separatorChar) : outputDir) + "reads_kept_R1.fastq.gz");
-												
-												if(indexFileF != null){
-													writersIF[0] = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(((keepFirstDup || keepBestDup) ? (outputDir + "temp" + File.separatorChar) : outputDir) + "index_kept_R1.fastq.gz"), BUFFER_SIZE_GZIP)), BUFFER_SIZE);
-													strings.add(((keepFirstDup || keepBestDup) ? (outputDir + "temp" + File.separatorChar) : outputDir) + "index_kept_R1.fastq.gz");
-												}
-											}
-										}
-										
-										if(!mergePairedEnds && inputFileR != null && writersR[0] == null){ //reversed
-											if(!outputGZIP && !keepFirstDup && !keepBestDup){
-												writersR[0] = new BufferedWriter(new FileWriter(outputDir + "reads_kept_R2.fastq"), BUFFER_SIZE);
-												strings.add(outputDir + "reads_kept_R2.fastq");
-												
-												if(indexFileR != null){
-													writersIR[0] = new BufferedWriter(new FileWriter(outputDir + "index_kept_R2.fastq"), BUFFER_SIZE);
-													strings.add(outputDir + "index_kept_R2.fastq");
-												}
-											}else{
-												writersR[0] = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(((keepFirstDup || keepBestDup) ? (outputDir + "temp" + File.separatorChar) : outputDir) + "reads_kept_R2.fastq.gz"), BUFFER_SIZE_GZIP)), BUFFER_SIZE);
-												strings.add(((keepFirstDup || keepBestDup) ? (outputDir + "temp" + File.separatorChar) : outputDir) + "reads_kept_R2.fastq.gz");
-												
-												if(indexFileR != null){
-													writersIR[0] = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(((keepFirstDup || keepBestDup) ? (outputDir + "temp" + File.separatorChar) : outputDir) + "index_kept_R2.fastq.gz"), BUFFER_SIZE_GZIP)), BUFFER_SIZE);
-													strings.add(((keepFirstDup || keepBestDup) ? (outputDir + "temp" + File.separatorChar) : outputDir) + "index_kept_R2.fastq.gz");
-												}
-											}
-										}
-									}else{
-										if(writersF[barcodeIndex] == null){ //forwards
-											if(!outputGZIP && !keepFirstDup && !keepBestDup){
-												writersF[barcodeIndex] = new BufferedWriter(new FileWriter(outputDir + "sample_" + sampleMapF.get(sampleBarcodeF.get(barcodeIndex)) + "_R1.fastq"), BUFFER_SIZE);
-												strings.add(outputDir + "sample_" + sampleMapF.get(sampleBarcodeF.get(barcodeIndex)) + "_R1.fastq");
-												
-												if(indexFileF != null){
-													writersIF[barcodeIndex] = new BufferedWriter(new FileWriter(outputDir + "index_" + sampleMapF.get(sampleBarcodeF.get(barcodeIndex)) + "_R1.fastq"), BUFFER_SIZE);
-													strings.add(outputDir + "index_" + sampleMapF.get(sampleBarcodeF.get(barcodeIndex)) + "_R1.fastq");
-												}
-											}else{
-												writersF[barcodeIndex] = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(((keepFirstDup || keepBestDup) ? (outputDir + "temp" + File.separatorChar) : outputDir) + "sample_" + sampleMapF.get(sampleBarcodeF.get(barcodeIndex)) + "_R1.fastq.gz"), BUFFER_SIZE_GZIP)), BUFFER_SIZE);
-												strings.add(((keepFirstDup || keepBestDup) ? (outputDir + "temp" + File.separatorChar) : outputDir) + "sample_" + sampleMapF.get(sampleBarcodeF.get(barcodeIndex)) + "_R1.fastq.gz");
-												
-												if(indexFileF != null){
-													writersIF[barcodeIndex] = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(((keepFirstDup || keepBestDup) ? (outputDir + "temp" + File.separatorChar) : outputDir) + "index_" + sampleMapF.get(sampleBarcodeF.get(barcodeIndex)) + "_R1.fastq.gz"), BUFFER_SIZE_GZIP)), BUFFER_SIZE);
-													strings.add(((keepFirstDup || keepBestDup) ? (outputDir + "temp" + File.separatorChar) : outputDir) + "index_" + sampleMapF.get(sampleBarcodeF.get(barcodeIndex)) + "_R1.fastq.gz");
-												}
-											}
-										}
-										
-										if(!mergePairedEnds && inputFileR != null && writersR[barcodeIndex] == null){ //reversed
-											if(!outputGZIP && !keepFirstDup && !keepBestDup){
-												writersR[barcodeIndex] = new BufferedWriter(new FileWriter(outputDir + "sample_" + sampleMapF.get(sampleBarcodeF.get(barcodeIndex)) + "_R2.fastq"), BUFFER_SIZE);
-												strings.add(outputDir + "sample_" + sampleMapF.get(sampleBarcodeF.get(barcodeIndex)) + "_R2.fastq");
-												
-												if(indexFileR != null){
-													writersIR[barcodeIndex] = new BufferedWriter(new FileWriter(outputDir + "index_" + sampleMapF.get(sampleBarcodeF.get(barcodeIndex)) + "_R2.fastq"), BUFFER_SIZE);
-													strings.add(outputDir + "index_" + sampleMapF.get(sampleBarcodeF.get(barcodeIndex)) + "_R2.fastq");
-												}
-											}else{
-												writersR[barcodeIndex] = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(((keepFirstDup || keepBestDup) ? (outputDir + "temp" + File.separatorChar) : outputDir) + "sample_" + sampleMapF.get(sampleBarcodeF.get(barcodeIndex)) + "_R2.fastq.gz"), BUFFER_SIZE_GZIP)), BUFFER_SIZE);
-												strings.add(((keepFirstDup || keepBestDup) ? (outputDir + "temp" + File.separatorChar) : outputDir) + "sample_" + sampleMapF.get(sampleBarcodeF.get(barcodeIndex)) + "_R2.fastq.gz");
-												
-												if(indexFileR != null){
-													writersIR[barcodeIndex] = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(((keepFirstDup || keepBestDup) ? (outputDir + "temp" + File.separatorChar) : outputDir) + "index_" + sampleMapF.get(sampleBarcodeF.get(barcodeIndex)) + "_R2.fastq.gz"), BUFFER_SIZE_GZIP)), BUFFER_SIZE);
-													strings.add(((keepFirstDup || keepBestDup) ? (outputDir + "temp" + File.separatorChar) : outputDir) + "index_" + sampleMapF.get(sampleBarcodeF.get(barcodeIndex)) + "_R2.fastq.gz");
-												}
-											}
-										}
-									}
-									
-									if(strings.size() > 0) //if a new writer was created
-										files.offer(strings);
-									
-									//print to the whatever file the read belongs to
-									writersF[sampleInfoFile == null ? 0 : barcodeIndex].write(read.readF[0]);
-									writersF[sampleInfoFile == null ? 0 : barcodeIndex].newLine();
-									writersF[sampleInfoFile == null ? 0 : barcodeIndex].write(read.readF[1]);
-									writersF[sampleInfoFile == null ? 0 : barcodeIndex].newLine();
-									writersF[sampleInfoFile == null ? 0 : barcodeIndex].write(description2);
-									writersF[sampleInfoFile == null ? 0 : barcodeIndex].newLine();
-									writersF[sampleInfoFile == null ? 0 : barcodeIndex].write(read.readF[3]);
-									writersF[sampleInfoFile == null ? 0 : barcodeIndex].newLine();
-									
-									if(indexFileF != null){
-										writersIF[sampleInfoFile == null ? 0 : barcodeIndex].write(read.readIF[0]);
-										writersIF[sampleInfoFile == null ? 0 : barcodeIndex].newLine();
-										writersIF[sampleInfoFile == null ? 0 : barcodeIndex].write(read.readIF[1]);
-										writersIF[sampleInfoFile == null ? 0 : barcodeIndex].newLine();
-										writersIF[sampleInfoFile == null ? 0 : barcodeIndex].write(description2);
-										writersIF[sampleInfoFile == null ? 0 : barcodeIndex].newLine();
-										writersIF[sampleInfoFile == null ? 0 : barcodeIndex].write(read.readIF[3]);
-										writersIF[sampleInfoFile == null ? 0 : barcodeIndex].newLine();
-									}
-									
-									if(!mergePairedEnds && inputFileR != null){
-										writersR[sampleInfoFile == null ? 0 : barcodeIndex].write(read.readR[0]);
-										writersR[sampleInfoFile == null ? 0 : barcodeIndex].newLine();
-										writersR[sampleInfoFile == null ? 0 : barcodeIndex].write(read.readR[1]);
-										writersR[sampleInfoFile == null ? 0 : barcodeIndex].newLine();
-										writersR[sampleInfoFile == null ? 0 : barcodeIndex].write(description2);
-										writersR[sampleInfoFile == null ? 0 : barcodeIndex].newLine();
-										writersR[sampleInfoFile == null ? 0 : barcodeIndex].write(read.readR[3]);
-										writersR[sampleInfoFile == null ? 0 : barcodeIndex].newLine();
-										
-										if(indexFileR != null){
-											writersIR[sampleInfoFile == null ? 0 : barcodeIndex].write(read.readIR[0]);
-											writersIR[sampleInfoFile == null ? 0 : barcodeIndex].newLine();
-											writersIR[sampleInfoFile == null ? 0 : barcodeIndex].write(read.readIR[1]);
-											writersIR[sampleInfoFile == null ? 0 : barcodeIndex].newLine();
-											writersIR[sampleInfoFile == null ? 0 : barcodeIndex].write(description2);
-											writersIR[sampleInfoFile == null ? 0 : barcodeIndex].newLine();
-											writersIR[sampleInfoFile == null ? 0 : barcodeIndex].write(read.readIR[3]);
-											writersIR[sampleInfoFile == null ? 0 : barcodeIndex].newLine();
-										}
-									}
-								}catch(Exception e){
-									UtilMethods.defaultExceptionHandler(logWriter, e);
-								}
-							}
-							valid = true;
-						}
+		//when following input files, the outputs and stats are flushed every once in a while, so they can be used before the run ends
+		Thread flusher = null;
+		if(followInput){
+			flusher = new Thread(() -> {
+				while(true){
+					try{
+						Thread.sleep(FOLLOW_FLUSH_INTERVAL);
+					}catch(InterruptedException e){
+						return;
 					}
-				}
-			}
-			
-			if(!valid){
-				//statistics
-				readCounts[readCounts.length - 1][0].add(inputFileR == null ? 1 : 2);
-				undeterminedReads.add(inputFileR == null ? 1 : 2);
-				
-				readCounts[readCounts.length - 1][1].add(tempSequenceF.length() + (inputFileR == null ? 0 : tempSequenceR.length()));
-				baseCount.add(tempSequenceF.length() + (inputFileR == null ? 0 : tempSequenceR.length()));
-				
-				synchronized(locks[locks.length - 1]){
 					try{
-						if(undeterminedWriterF[0] == null){ //initialize writers for the undetermined files if they have not already been initialized
-							if(outputGZIP){
-								undeterminedWriterF[0] = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(outputDir + (sampleInfoFile == null ? "reads" : "sample") + "_undetermined_R1.fastq.gz"), BUFFER_SIZE_GZIP)), BUFFER_SIZE);
-								if(inputFileR != null)
-									undeterminedWriterR[0] = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(outputDir + (sampleInfoFile == null ? "reads" : "sample") + "_undetermined_R2.fastq.gz"), BUFFER_SIZE_GZIP)), BUFFER_SIZE);
-								if(indexFileF != null){
-									undeterminedWriterF[1] = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(outputDir + "index_undetermined_R1.fastq.gz"), BUFFER_SIZE_GZIP)), BUFFER_SIZE);
-									if(inputFileR != null)
-										undeterminedWriterR[1] = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(outputDir + "index_undetermined_R2.fastq.gz"), BUFFER_SIZE_GZIP)), BUFFER_SIZE);
-								}
-							}else{
-								undeterminedWriterF[0] = new BufferedWriter(new FileWriter(outputDir + (sampleInfoFile == null ? "reads" : "sample") + "_undetermined_R1.fastq"), BUFFER_SIZE);
-								if(inputFileR != null)
-									undeterminedWriterR[0] = new BufferedWriter(new FileWriter(outputDir + (sampleInfoFile == null ? "reads" : "sample") + "_undetermined_R2.fastq"), BUFFER_SIZE);
-								if(indexFileF != null){
-									undeterminedWriterF[1] = new BufferedWriter(new FileWriter(outputDir + "index_undetermined_R1.fastq"), BUFFER_SIZE);
-									if(inputFileR != null)
-										undeterminedWriterR[1] = new BufferedWriter(new FileWriter(outputDir + "index_undetermined_R2.fastq"), BUFFER_SIZE);
-								}
+						for(int i = 0; i < locks.length - 1; i++){
+							synchronized(locks[i]){
+								flushAll(writersF[i], writersR == null ? null : writersR[i], writersIF == null ? null : writersIF[i], writersIR == null ? null : writersIR[i]);
 							}
-							generatedUndeterminedFile = true;
 						}
-						
-						//print to undetermined file
-						undeterminedWriterF[0].write(read.readF[0]);
-						undeterminedWriterF[0].newLine();
-						undeterminedWriterF[0].write(tempSequenceF);
-						undeterminedWriterF[0].newLine();
-						undeterminedWriterF[0].write(description2);
-						undeterminedWriterF[0].newLine();
-						undeterminedWriterF[0].write(tempQualityF);
-						undeterminedWriterF[0].newLine();
-						
-						if(indexFileF != null){
-							undeterminedWriterF[1].write(read.readIF[0]);
-							undeterminedWriterF[1].newLine();
-							undeterminedWriterF[1].write(read.readIF[1]);
-							undeterminedWriterF[1].newLine();
-							undeterminedWriterF[1].write(description2);
-							undeterminedWriterF[1].newLine();
-							undeterminedWriterF[1].write(read.readIF[3]);
-							undeterminedWriterF[1].newLine();
+						synchronized(locks[locks.length - 1]){
+							flushAll(undeterminedWriterF[0], undeterminedWriterF[1], undeterminedWriterR == null ? null : undeterminedWriterR[0], undeterminedWriterR == null ? null : undeterminedWriterR[1]);
 						}
-						
-						if(inputFileR != null){
-							undeterminedWriterR[0].write(read.readR[0]);
-							undeterminedWriterR[0].newLine();
-							undeterminedWriterR[0].write(tempSequenceR);
-							undeterminedWriterR[0].newLine();
-							undeterminedWriterR[0].write(description2);
-							undeterminedWriterR[0].newLine();
-							undeterminedWriterR[0].write(tempQualityR);
-							undeterminedWriterR[0].newLine();
-							
-							if(indexFileR != null){
-								undeterminedWriterR[1].write(read.readIR[0]);
-								undeterminedWriterR[1].newLine();
-								undeterminedWriterR[1].write(read.readIR[1]);
-								undeterminedWriterR[1].newLine();
-								undeterminedWriterR[1].write(description2);
-								undeterminedWriterR[1].newLine();
-								undeterminedWriterR[1].write(read.readIR[3]);
-								undeterminedWriterR[1].newLine();
-							}
+						if(!stdoutOutput){ //stderr already has the log, so only the final stats go there
+							updateStats(laneCounts);
+							updateTotalStats();
+							writeStats(Mode.PROCESS);
 						}
+						logWriter.println("Reads Processed So Far: " + DECIMAL_FORMAT.format(totalReadsProcessed));
+						logWriter.println("Run Time So Far: " + UtilMethods.formatElapsedTime(System.currentTimeMillis() - startTime));
+						logWriter.flush();
 					}catch(Exception e){
 						UtilMethods.defaultExceptionHandler(logWriter, e);
 					}
 				}
+			}, "FastQParse-Flush");
+			flusher.setDaemon(true);
+			flusher.start();
+		}
+		
+		AdaptiveBatchSize adaptive = parallel && adaptiveBatchSize && mappedSpliterators == null ? new AdaptiveBatchSize(splitBatchSize, ForkJoinPool.getCommonPoolParallelism() + 1) : null;
+		if(indexFirst){
+			demultiplexIndexFirst(adaptive, readersF, readersR, readersIF, readersIR, writersF, writersR, writersIF, writersIR, undeterminedWriterF, undeterminedWriterR, laneCounts, files);
+		}else{
+			ArrayList<Spliterator<Read>> laneSpliterators = new ArrayList<Spliterator<Read>>();
+			for(int i = 0; i < lanes; i++){
+				if(mappedSpliterators != null)
+					laneSpliterators.add(mappedSpliterators.get(i));
+				else if(adaptive != null)
+					laneSpliterators.add(new ReadSpliterator<Read>(adaptive, readersF[i], readersR[i], readersIF[i], readersIR[i]));
+				else
+					laneSpliterators.add(new ReadSpliterator<Read>(splitBatchSize, readersF[i], readersR[i], readersIF[i], readersIR[i]));
 			}
-		});
+			//each batch of reads goes through every stage before the next batch
+			StreamSupport.stream(new ReadBatchSpliterator(lanes == 1 ? laneSpliterators.get(0) : new LaneSpliterator<Read>(laneSpliterators), READ_BATCH_SIZE, allocationBudget, adaptive), parallel).forEach((batch) -> {
+				long mark = allocationBudget == null ? 0L : AllocationBudget.threadBytes();
+				filterBatch(batch);
+				demultiplexBatch(batch);
+				if(allocationBudget != null)
+					allocationBudget.charge(AllocationBudget.DEMULTIPLEX, mark);
+				trimBatch(batch); //charges each trimming step on its own
+				if(allocationBudget != null)
+					mark = AllocationBudget.threadBytes();
+				writeBatch(batch, laneCounts, locks, writersF, writersR, writersIF, writersIR, undeterminedWriterF, undeterminedWriterR, files);
+				if(allocationBudget != null)
+					allocationBudget.charge(AllocationBudget.WRITE, mark);
+			});
+		}
+		
+		if(flusher != null){
+			flusher.interrupt();
+			flusher.join();
+		}
+		
+		if(adaptive != null){
+			logWriter.println();
+			logWriter.println("Adaptive Batch Sizes Chosen: " + adaptive.history());
+			logWriter.println("Final Batch Size: " + adaptive.finalSize() + " (Min: " + adaptive.minSize() + ", Max: " + adaptive.maxSize() + ")");
+			logWriter.println("Average Batch Time (ms): " + DECIMAL_FORMAT.format(adaptive.averageBatchMillis()));
+			logWriter.println("Fraction of Time Between Batches: " + DECIMAL_FORMAT.format(adaptive.idleFraction()));
+		}
 		
 		//close everything
-		readerF.close();
+		if(decompressPool != null){
+			decompressPool.shutdown();
+			decompressPool = null;
+		}
+		if(mappedSpliterators != null){
+			for(MappedReadSpliterator<Read> mappedSpliterator : mappedSpliterators)
+				mappedSpliterator.close();
+		}
+		if(allocationBudget != null){ //the prefetcher threads parse the records before they get to the stages
+			for(int i = 0; i < lanes; i++){
+				for(FastQPrefetcher reader : new FastQPrefetcher[]{readersF[i], readersIF[i], readersR[i] == readersF[i] ? null : readersR[i], readersIR[i]}){
+					if(reader != null)
+						allocationBudget.add(AllocationBudget.PARSE, reader.allocatedBytes());
+				}
+			}
+		}
+		for(int i = 0; i < lanes; i++){
+			if(readersF[i] != null)
+				readersF[i].close();
+			if(readersIF[i] != null)
+				readersIF[i].close();
+			if(readersR[i] != null && readersR[i] != readersF[i])
+				readersR[i].close();
+			if(readersIR[i] != null)
+				readersIR[i].close();
+		}
 		if(undeterminedWriterF[0] != null)
 			undeterminedWriterF[0].close();
 		if(indexFileF != null){
-			readerIF.close();
 			if(undeterminedWriterF[1] != null)
 				undeterminedWriterF[1].close();
 		}
@@ -1784,11 +1556,9 @@ public class FastQParseMain {
 				writersIF[i].close();
 		}
 		if(inputFileR != null){
-			readerR.close();
 			if(undeterminedWriterR != null && undeterminedWriterR[0] != null)
 				undeterminedWriterR[0].close();
 			if(indexFileR != null){
-				readerIR.close();
 				if(undeterminedWriterR != null && undeterminedWriterR[1] != null)
 					undeterminedWriterR[1].close();
 			}
@@ -1802,102 +1572,1321 @@ public class FastQParseMain {
 			}
 		}
 		
-		//update stats
-		if(sampleInfoFile == null){
-			EnumMap<Stat, String> map = stats.get("Kept");
-			map.put(Stat.SEQUENCE_COUNT, DECIMAL_FORMAT.format(readCounts[0][0].sum()));
-			map.put(Stat.SEQUENCE_PERCENT, DECIMAL_FORMAT.format((double)readCounts[0][0].sum() / (double)totalReadsProcessed.sum()));
-			map.put(Stat.MERGED_COUNT, DECIMAL_FORMAT.format(readCounts[0][2].sum()));
-			map.put(Stat.MERGED_PERCENT, DECIMAL_FORMAT.format((double)readCounts[0][2].sum() / (double)totalReadsProcessed.sum()));
-			map.put(Stat.REMOVEADAPTER_COUNT, DECIMAL_FORMAT.format(readCounts[0][3].sum()));
-			map.put(Stat.REMOVEADAPTER_PERCENT, DECIMAL_FORMAT.format((double)readCounts[0][3].sum() / (double)readCounts[0][0].sum()));
-			map.put(Stat.QUALITYTRIM_COUNT, DECIMAL_FORMAT.format(readCounts[0][4].sum()));
-			map.put(Stat.QUALITYTRIM_PERCENT, DECIMAL_FORMAT.format((double)readCounts[0][4].sum() / (double)readCounts[0][0].sum()));
-			map.put(Stat.BASE_COUNT, DECIMAL_FORMAT.format(readCounts[0][1].sum()));
-			map.put(Stat.BASE_PERCENT, DECIMAL_FORMAT.format((double)readCounts[0][1].sum() / (double)baseCount.sum()));
-		}else{
-			for(int i = 0; i < sampleBarcodeF.size(); i++){
-				EnumMap<Stat, String> map = stats.get(sampleMapF.get(sampleBarcodeF.get(i)));
-				map.put(Stat.SEQUENCE_COUNT, DECIMAL_FORMAT.format(readCounts[i][0].sum()));
-				map.put(Stat.SEQUENCE_PERCENT, DECIMAL_FORMAT.format((double)readCounts[i][0].sum() / (double)totalReadsProcessed.sum()));
-				map.put(Stat.MERGED_COUNT, DECIMAL_FORMAT.format(readCounts[i][2].sum()));
-				map.put(Stat.MERGED_PERCENT, DECIMAL_FORMAT.format((double)readCounts[i][2].sum() / (double)totalReadsProcessed.sum()));
-				map.put(Stat.REMOVEADAPTER_COUNT, DECIMAL_FORMAT.format(readCounts[i][3].sum()));
-				map.put(Stat.REMOVEADAPTER_PERCENT, DECIMAL_FORMAT.format((double)readCounts[i][3].sum() / (double)readCounts[i][0].sum()));
-				map.put(Stat.QUALITYTRIM_COUNT, DECIMAL_FORMAT.format(readCounts[i][4].sum()));
-				map.put(Stat.QUALITYTRIM_PERCENT, DECIMAL_FORMAT.format((double)readCounts[i][4].sum() / (double)readCounts[i][0].sum()));
-				map.put(Stat.BASE_COUNT, DECIMAL_FORMAT.format(readCounts[i][1].sum()));
-				map.put(Stat.BASE_PERCENT, DECIMAL_FORMAT.format((double)readCounts[i][1].sum() / (double)baseCount.sum()));
-			}
-		}
-		stats.get("Undetermined").put(Stat.SEQUENCE_COUNT, DECIMAL_FORMAT.format(readCounts[readCounts.length - 1][0].sum()));
-		stats.get("Undetermined").put(Stat.SEQUENCE_PERCENT, DECIMAL_FORMAT.format((double)readCounts[readCounts.length - 1][0].sum() / (double)totalReadsProcessed.sum()));
-		stats.get("Undetermined").put(Stat.BASE_COUNT, DECIMAL_FORMAT.format(readCounts[readCounts.length - 1][1].sum()));
-		stats.get("Undetermined").put(Stat.BASE_PERCENT, DECIMAL_FORMAT.format((double)readCounts[readCounts.length - 1][1].sum() / (double)baseCount.sum()));
+		updateStats(laneCounts);
 		
 		return files;
 	}
 	
-	private long deduplicate(String readPathF, String readPathR, String indexPathF, String indexPathR, String outDir, String dupPath1, String dupPath2) throws Exception{
-		long removed = 0L;
-		
-		File originalFileF = new File(readPathF);
-		int pos = originalFileF.getName().indexOf(".");
-		String justNameF = pos > 0 ? originalFileF.getName().substring(0, pos) : originalFileF.getName();
-		File outputFileF = new File(outputDir + justNameF + "_dedup.fastq" + (outputGZIP ? ".gz" : ""));
-		
-		File originalFileIF = new File(indexPathF);
-		pos = originalFileIF.getName().indexOf(".");
-		String justNameIF = pos > 0 ? originalFileIF.getName().substring(0, pos) : originalFileIF.getName();
-		File outputFileIF = new File(outputDir + justNameIF + "_dedup.fastq" + (outputGZIP ? ".gz" : ""));
-		
-		File originalFileR = null;
-		String justNameR = null;
-		File outputFileR = null;
-		
-		File originalFileIR = null;
-		String justNameIR = null;
-		File outputFileIR = null;
+	//demultiplexes in two phases, so the reads never need to be matched or paired up with each other
+	//first, only the index reads are matched, and the sample of every read is saved in a compact array for each lane
+	//then the reads and index reads of each file are routed to their samples in separate passes, which run at the same time when running in parallel
+	//each pass reads its file in order, so the reads in every output file stay in the same order as the other files of the same sample
+	//note that a read is only undetermined if its index reads do not match, since nothing else is checked in this mode
+	private void demultiplexIndexFirst(AdaptiveBatchSize adaptive, FastQPrefetcher[] readersF, FastQPrefetcher[] readersR, FastQPrefetcher[] readersIF, FastQPrefetcher[] readersIR,
+			OutputStream[] writersF, OutputStream[] writersR, OutputStream[] writersIF, OutputStream[] writersIR, OutputStream[] undeterminedWriterF, OutputStream[] undeterminedWriterR,
+			LongAdder[][][] laneCounts, ConcurrentLinkedQueue<Strings> files) throws Exception{
+		int lanes = readersF.length;
+		SampleAssignments[] assignments = new SampleAssignments[lanes];
+		LongAdder[] indexCounts = new LongAdder[lanes];
+		ArrayList<Spliterator<Read>> laneSpliterators = new ArrayList<Spliterator<Read>>();
+		for(int i = 0; i < lanes; i++){
+			assignments[i] = new SampleAssignments(sampleBarcodeF.size());
+			indexCounts[i] = new LongAdder();
+			//the index reads take the place of the reads, so the index reads are paired up without the reads
+			if(adaptive != null)
+				laneSpliterators.add(new ReadSpliterator<Read>(adaptive, readersIF[i], readersIR[i], null, null));
+			else
+				laneSpliterators.add(new ReadSpliterator<Read>(splitBatchSize, readersIF[i], readersIR[i], null, null));
+		}
 		
-		if(readPathR != null){
-			originalFileR = new File(readPathR);
-			pos = originalFileR.getName().indexOf(".");
-			justNameR = pos > 0 ? originalFileR.getName().substring(0, pos) : originalFileR.getName();
-			outputFileR = new File(outputDir + justNameR + "_dedup.fastq" + (outputGZIP ? ".gz" : ""));
+		//phase 1: match the index reads
+		StreamSupport.stream(lanes == 1 ? laneSpliterators.get(0) : new LaneSpliterator<Read>(laneSpliterators), parallel).forEach((read) -> {
+			totalReadsProcessed.add(inputFileR == null ? 1 : 2);
+			LongAdder[][] readCounts = laneCounts[read.lane];
 			
-			originalFileIR = new File(indexPathR);
-			pos = originalFileIR.getName().indexOf(".");
-			justNameIR = pos > 0 ? originalFileIR.getName().substring(0, pos) : originalFileIR.getName();
-			outputFileIR = new File(outputDir + justNameIR + "_dedup.fastq" + (outputGZIP ? ".gz" : ""));
-		}
+			if(!parallel && totalReadsProcessed.sum() % printProcessedInterval == 0){
+				logWriter.println("Reads Processed So Far: " + DECIMAL_FORMAT.format(totalReadsProcessed));
+				logWriter.println("Run Time So Far: " + UtilMethods.formatElapsedTime(System.currentTimeMillis() - startTime));
+				logWriter.println("Current Memory Usage (GB): " + DECIMAL_FORMAT.format(UtilMethods.currentMemoryUsage()));
+				logWriter.flush();
+			}
+			
+			int barcodeIndex = matchIndexBarcode(read.readF, read.readR);
+			assignments[read.lane].set(read.index, barcodeIndex);
+			indexCounts[read.lane].increment();
+			
+			readCounts[barcodeIndex == -1 ? readCounts.length - 1 : barcodeIndex][0].add(inputFileR == null ? 1 : 2);
+			if(barcodeIndex == -1)
+				undeterminedReads.add(inputFileR == null ? 1 : 2);
+		});
 		
-		BufferedReader readerF;
-		BufferedReader readerR = null;
-		BufferedReader readerIF;
-		BufferedReader readerIR = null;
-		readerF = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(readPathF), BUFFER_SIZE_GZIP)), BUFFER_SIZE);
-		readerIF = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(indexPathF), BUFFER_SIZE_GZIP)), BUFFER_SIZE);
-		if(readPathR != null){
-			readerR = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(readPathR), BUFFER_SIZE_GZIP)), BUFFER_SIZE);
-			readerIR = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(indexPathR), BUFFER_SIZE_GZIP)), BUFFER_SIZE);
+		//all of the files are opened before routing, so the passes do not need to synchronize
+		for(int i = 0; i < writersF.length; i++){
+			long reads = 0;
+			for(int j = 0; j < lanes; j++)
+				reads += laneCounts[j][i][0].sum();
+			if(reads > 0)
+				openSampleWriters(i, writersF, writersR, writersIF, writersIR, files);
 		}
+		if(undeterminedReads.sum() > 0)
+			openUndeterminedWriters(undeterminedWriterF, undeterminedWriterR);
 		
-		if(keepFirstDup){
-			BufferedWriter writerF;
-			BufferedWriter writerR = null;
-			BufferedWriter writerIF;
-			BufferedWriter writerIR = null;
-			if(outputGZIP){
-				writerF = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(outputFileF.getAbsolutePath()), BUFFER_SIZE_GZIP)), BUFFER_SIZE);
-				writerIF = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(outputFileIF.getAbsolutePath()), BUFFER_SIZE_GZIP)), BUFFER_SIZE);
-				if(readPathR != null){
-					writerR = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(outputFileR.getAbsolutePath()), BUFFER_SIZE_GZIP)), BUFFER_SIZE);
-					writerIR = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(outputFileIR.getAbsolutePath()), BUFFER_SIZE_GZIP)), BUFFER_SIZE);
-				}
-			}else{
-				writerF = new BufferedWriter(new FileWriter(outputFileF.getAbsolutePath()), BUFFER_SIZE);
-				writerIF = new BufferedWriter(new FileWriter(outputFileIF.getAbsolutePath()), BUFFER_SIZE);
-				if(readPathR != null){
+		//phase 2: route each file on its own
+		//the index files are opened again, since the first pass already used up the index readers
+		FastQPrefetcher[] routeIF = new FastQPrefetcher[lanes];
+		FastQPrefetcher[] routeIR = indexFileR == null ? null : new FastQPrefetcher[lanes];
+		for(int i = 0; i < lanes; i++){
+			String lane = lanes > 1 ? "L" + (i + 1) + "_" : "";
+			routeIF[i] = new FastQPrefetcher(openFastQ(indexFilesF[i]), lane + "I1_Route", PREFETCH_BATCH_SIZE, PREFETCH_BATCHES);
+			if(routeIR != null)
+				routeIR[i] = new FastQPrefetcher(openFastQ(indexFilesR[i]), lane + "I2_Route", PREFETCH_BATCH_SIZE, PREFETCH_BATCHES);
+		}
+		ArrayList<Runnable> passes = new ArrayList<Runnable>();
+		passes.add(routePass("R1", readersF, assignments, indexCounts, writersF, undeterminedWriterF[0], laneCounts, true));
+		passes.add(routePass("I1", routeIF, assignments, indexCounts, writersIF, undeterminedWriterF[1], laneCounts, false));
+		if(inputFileR != null){
+			passes.add(routePass("R2", readersR, assignments, indexCounts, writersR, undeterminedWriterR[0], laneCounts, true));
+			if(routeIR != null)
+				passes.add(routePass("I2", routeIR, assignments, indexCounts, writersIR, undeterminedWriterR[1], laneCounts, false));
+		}
+		if(parallel){
+			ArrayList<Thread> threads = new ArrayList<Thread>();
+			for(int i = 0; i < passes.size(); i++){
+				Thread t = new Thread(passes.get(i), "FastQParse-Route-" + i);
+				t.start();
+				threads.add(t);
+			}
+			for(Thread t : threads)
+				t.join();
+		}else{
+			for(Runnable pass : passes)
+				pass.run();
+		}
+		for(int i = 0; i < lanes; i++){
+			routeIF[i].close();
+			if(routeIR != null)
+				routeIR[i].close();
+		}
+	}
+	
+	//writes every record of a file to the sample of the read at the same position
+	private Runnable routePass(String name, FastQPrefetcher[] readers, SampleAssignments[] assignments, LongAdder[] indexCounts, OutputStream[] writers, OutputStream undeterminedWriter,
+			LongAdder[][][] laneCounts, boolean countBases){
+		return () -> {
+			try{
+				for(int lane = 0; lane < readers.length; lane++){
+					long[] bases = new long[laneCounts[lane].length]; //summed here, so the counts are not shared for every read
+					long i = 0;
+					FastQRecord record;
+					while((record = readers[lane].next()) != null){
+						int barcodeIndex = assignments[lane].get(i++);
+						writeRecord(barcodeIndex == -1 ? undeterminedWriter : writers[barcodeIndex], record.description, record.sequence, record.quality);
+						bases[barcodeIndex == -1 ? bases.length - 1 : barcodeIndex] += record.sequence.length();
+					}
+					if(i != indexCounts[lane].sum())
+						throw new Exception("The number of reads in " + name + (readers.length > 1 ? " (Lane " + (lane + 1) + ")" : "") + " does not match the number of index reads");
+					if(countBases){
+						for(int j = 0; j < bases.length; j++){
+							laneCounts[lane][j][1].add(bases[j]);
+							baseCount.add(bases[j]);
+						}
+					}
+				}
+			}catch(Exception e){
+				UtilMethods.defaultExceptionHandler(logWriter, e);
+			}
+		};
+	}
+	
+	//filtering stage: reads with too many N or low quality are undetermined, so they are not demultiplexed or trimmed
+	private void filterBatch(ReadBatch batch){
+		for(int n = 0; n < batch.size; n++){
+			Read read = batch.reads[n];
+			totalReadsProcessed.add(inputFileR == null ? 1 : 2);
+			
+			//if this is supported in parallel then the logWriter needs to be synchronized
+			//easier and faster to just not print
+			if(!parallel && totalReadsProcessed.sum() % printProcessedInterval == 0){
+				logWriter.println("Reads Processed So Far: " + DECIMAL_FORMAT.format(totalReadsProcessed));
+				logWriter.println("Run Time So Far: " + UtilMethods.formatElapsedTime(System.currentTimeMillis() - startTime));
+				logWriter.println("Current Memory Usage (GB): " + DECIMAL_FORMAT.format(UtilMethods.currentMemoryUsage()));
+				logWriter.flush();
+			}
+			
+			//check the percentage of N
+			if(!(maxNPercent > 1.0 || (maxNPercent >= 0.0 && UtilMethods.percentN(read.readF.sequence) <= maxNPercent && (inputFileR == null || UtilMethods.percentN(read.readR.sequence) <= maxNPercent)) ||
+					(maxNPercent < 0.0 && UtilMethods.countN(read.readF.sequence) <= 0 && (inputFileR == null || UtilMethods.countN(read.readR.sequence) <= 0)))){
+				batch.passed[n] = false;
+				continue;
+			}
+			
+			//check if the quality is good enough
+			if(filterAlgorithm){
+				batch.passed[n] = UtilMethods.toError(read.readF.quality, 0) <= qualityFilter && (inputFileR == null || UtilMethods.toError(read.readR.quality, 0) <= qualityFilter);
+			}else{
+				batch.passed[n] = UtilMethods.toQScore(read.readF.quality, 0) >= qualityFilter && (inputFileR == null || UtilMethods.toQScore(read.readR.quality, 0) >= qualityFilter);
+			}
+		}
+	}
+	
+	//writing stage: updates the stats, and writes the reads to their files
+	//the reads are grouped by file, so each file's lock is only taken once for the whole batch
+	private void writeBatch(ReadBatch batch, LongAdder[][][] laneCounts, Object[] locks, OutputStream[] writersF, OutputStream[] writersR, OutputStream[] writersIF, OutputStream[] writersIR,
+			OutputStream[] undeterminedWriterF, OutputStream[] undeterminedWriterR, ConcurrentLinkedQueue<Strings> files){
+		int undetermined = locks.length - 1;
+		//counting sort by file, so the reads of each file stay in order
+		int[] starts = new int[locks.length + 1];
+		int[] order = new int[batch.size];
+		for(int n = 0; n < batch.size; n++)
+			starts[(batch.passed[n] ? (sampleInfoFile == null ? 0 : batch.sample[n]) : undetermined) + 1]++;
+		for(int i = 1; i < starts.length; i++)
+			starts[i] += starts[i - 1];
+		int[] next = Arrays.copyOf(starts, locks.length);
+		for(int n = 0; n < batch.size; n++)
+			order[next[batch.passed[n] ? (sampleInfoFile == null ? 0 : batch.sample[n]) : undetermined]++] = n;
+		
+		for(int barcodeIndex = 0; barcodeIndex < undetermined; barcodeIndex++){
+			if(starts[barcodeIndex] == starts[barcodeIndex + 1])
+				continue;
+			
+			for(int i = starts[barcodeIndex]; i < starts[barcodeIndex + 1]; i++){
+				Read read = batch.reads[order[i]];
+				LongAdder[][] readCounts = laneCounts[read.lane];
+				
+				//statistics
+				readCounts[barcodeIndex][0].add(inputFileR == null ? 1 : 2);
+				
+				readCounts[barcodeIndex][1].add(read.readF.sequence.length() + (inputFileR == null || mergePairedEnds ? 0 : read.readR.sequence.length()));
+				baseCount.add(read.readF.sequence.length() + (inputFileR == null || mergePairedEnds ? 0 : read.readR.sequence.length()));
+				
+				readCounts[barcodeIndex][2].add(batch.merged[order[i]] ? 2 : 0);
+				totalReadsMerged.add(batch.merged[order[i]] ? 2 : 0);
+				
+				readCounts[barcodeIndex][3].add(batch.removedAdapter[order[i]]);
+				totalRemovedAdapters.add(batch.removedAdapter[order[i]]);
+				
+				readCounts[barcodeIndex][4].add(batch.trimmedQuality[order[i]]);
+				totalQualityTrimmed.add(batch.trimmedQuality[order[i]]);
+			}
+			
+			synchronized(locks[barcodeIndex]){ //synchronized output per file, so no two threads can write to the same file at the same time
+				try{
+					openSampleWriters(barcodeIndex, writersF, writersR, writersIF, writersIR, files);
+					
+					for(int i = starts[barcodeIndex]; i < starts[barcodeIndex + 1]; i++){
+						Read read = batch.reads[order[i]];
+						
+						//print to the whatever file the read belongs to
+						writeRecord(writersF[barcodeIndex], read.readF.description, read.readF.sequence, read.readF.quality);
+						
+						if(indexFileF != null){
+							writeRecord(writersIF[barcodeIndex], read.readIF.description, read.readIF.sequence, read.readIF.quality);
+						}
+						
+						if(!mergePairedEnds && inputFileR != null){
+							writeRecord(writersR[barcodeIndex], read.readR.description, read.readR.sequence, read.readR.quality);
+							
+							if(indexFileR != null){
+								writeRecord(writersIR[barcodeIndex], read.readIR.description, read.readIR.sequence, read.readIR.quality);
+							}
+						}
+					}
+				}catch(Exception e){
+					UtilMethods.defaultExceptionHandler(logWriter, e);
+				}
+			}
+		}
+		
+		if(starts[undetermined] == starts[undetermined + 1])
+			return;
+		for(int i = starts[undetermined]; i < starts[undetermined + 1]; i++){
+			Read read = batch.reads[order[i]];
+			LongAdder[][] readCounts = laneCounts[read.lane];
+			
+			//undetermined reads are saved without any of the changes above
+			read.readF.untrim();
+			if(inputFileR != null)
+				read.readR.untrim();
+			
+			//statistics
+			readCounts[undetermined][0].add(inputFileR == null ? 1 : 2);
+			undeterminedReads.add(inputFileR == null ? 1 : 2);
+			
+			readCounts[undetermined][1].add(read.readF.sequence.length() + (inputFileR == null ? 0 : read.readR.sequence.length()));
+			baseCount.add(read.readF.sequence.length() + (inputFileR == null ? 0 : read.readR.sequence.length()));
+		}
+		
+		//undetermined reads are only counted when writing to stdout
+		if(!stdoutOutput){
+			synchronized(locks[undetermined]){
+				try{
+					openUndeterminedWriters(undeterminedWriterF, undeterminedWriterR);
+					
+					for(int i = starts[undetermined]; i < starts[undetermined + 1]; i++){
+						Read read = batch.reads[order[i]];
+						
+						//print to undetermined file
+						writeRecord(undeterminedWriterF[0], read.readF.description, read.readF.sequence, read.readF.quality);
+						
+						if(indexFileF != null){
+							writeRecord(undeterminedWriterF[1], read.readIF.description, read.readIF.sequence, read.readIF.quality);
+						}
+						
+						if(inputFileR != null){
+							writeRecord(undeterminedWriterR[0], read.readR.description, read.readR.sequence, read.readR.quality);
+							
+							if(indexFileR != null){
+								writeRecord(undeterminedWriterR[1], read.readIR.description, read.readIR.sequence, read.readIR.quality);
+							}
+						}
+					}
+				}catch(Exception e){
+					UtilMethods.defaultExceptionHandler(logWriter, e);
+				}
+			}
+		}
+	}
+	
+	//demultiplexing stage: finds the sample of every read that has not been filtered out
+	private void demultiplexBatch(ReadBatch batch){
+		if(sampleInfoFile == null) //only if there are barcodes
+			return;
+		BarcodeMatch res = new BarcodeMatch(sampleBarcodeF.size());
+		res.enzymesF = enzymeTableF.results();
+		res.enzymesR = enzymeTableR == null ? null : enzymeTableR.results();
+		for(int n = 0; n < batch.size; n++){
+			if(!batch.passed[n])
+				continue;
+			Read read = batch.reads[n];
+			res.reset();
+			res.clearRead();
+			
+			if(indexFileF == null){ //check for enzyme and barcode in reads, in the following order: forwards barcode, forwards enzyme, reversed barcode, reversed enzyme
+				if(demuxCache == null){
+					matchInlineBarcodes(read, res);
+				}else{ //reads that start with the same bases as an earlier read get the same result
+					//if the reversed reads are not checked, then they are not in the key, so their ends are found again from the length of each reversed read
+					boolean keyR = inputFileR != null && checkReversedReads;
+					DemuxCache.Key key = demuxCache.key(read.readF.packed(), keyR ? read.readR.packed() : null);
+					int[] cached = demuxCache.get(key);
+					if(cached == null){
+						matchInlineBarcodes(read, res);
+						demuxCache.put(key, keyR ? new int[]{res.sample, res.barcodeEnd, res.enzymeEnd, res.barcodeEnd2, res.enzymeEnd2} : new int[]{res.sample, res.barcodeEnd, res.enzymeEnd});
+					}else{
+						res.sample = cached[0];
+						res.barcodeEnd = cached[1];
+						res.enzymeEnd = cached[2];
+						if(keyR){
+							res.barcodeEnd2 = cached[3];
+							res.enzymeEnd2 = cached[4];
+						}else if(inputFileR != null && res.sample != -1){
+							copyEndsToReversed(read, res);
+						}
+					}
+				}
+			}else{ //check for barcode in index reads
+				res.sample = matchIndexBarcode(read.readIF, read.readIR);
+			}
+			
+			batch.sample[n] = res.sample;
+			batch.barcodeEnd[n] = res.barcodeEnd;
+			batch.enzymeEnd[n] = res.enzymeEnd;
+			batch.barcodeEnd2[n] = res.barcodeEnd2;
+			batch.enzymeEnd2[n] = res.enzymeEnd2;
+			if(res.sample == -1) //barcodes and enzymes were not found in the read
+				batch.passed[n] = false;
+		}
+	}
+	
+	//the max number of edits of a barcode or enzyme match
+	private static int maxEditsB(int length){
+		return UtilMethods.maxEdits(editMaxB, length);
+	}
+	
+	//the number of extra bases after a barcode or enzyme that its search looks at, since insertions can make a match longer than the pattern
+	//this is 0 without insertions and deletions, and when matching by probability
+	private static int barcodeEdits(int length){
+		return probB < 0.0 && allowIndelsB ? maxEditsB(length) : 0;
+	}
+	
+	//the max end (exclusive) of a barcode match, which is where its enzyme starts
+	//a barcode can end maxOffsetB bases (plus edits) after its length
+	private int maxBarcodeEnd(ArrayList<String> barcodes){
+		int maxBarcode = 0;
+		for(String barcode : barcodes)
+			maxBarcode = Math.max(maxBarcode, barcode.length());
+		int edits = barcodeEdits(maxBarcode);
+		return maxOffsetB + maxBarcode + edits + 1; //an empty barcode ends at 0 instead of -1
+	}
+	
+	//the max number of bases at the start of a read that the barcode and enzyme searches could look at
+	//an enzyme can end maxOffsetB bases (plus edits) after its length from the end of the barcode
+	private int demuxPrefix(ArrayList<String> barcodes, ArrayList<ArrayList<String>> enzymes){
+		int maxEnzyme = 0;
+		for(ArrayList<String> sampleEnzymes : enzymes){
+			for(String enzyme : sampleEnzymes)
+				maxEnzyme = Math.max(maxEnzyme, enzyme.length());
+		}
+		int edits = barcodeEdits(maxEnzyme);
+		return maxBarcodeEnd(barcodes) + maxOffsetB + maxEnzyme + edits;
+	}
+	
+	//finds the best barcode and enzyme match in the start of a read, by looking up or searching for the barcodes
+	private void matchInlineBarcodes(Read read, BarcodeMatch res){
+		//most reads have an exact barcode, which is found with a few lookups instead of searching for every sample's barcode
+		if(barcodeIndexes != null && matchIndexedBarcodes(read, res))
+			return;
+		res.reset();
+		if(anchorIndexes != null && matchAnchoredBarcodes(read, res))
+			return;
+		res.reset();
+		if(barcodeTriesF != null){
+			matchBarcodeTries(read, res);
+		}else if(fusedPatternsF != null){
+			for(int i = 0; i < sampleBarcodeF.size(); i++){
+				if(!matchFused(read, i, res))
+					break;
+			}
+		}else{
+			ArrayList<Match>[] groupMatches = probB < 0.0 ? searchBarcodeGroups(read) : null;
+			for(int i = 0; i < sampleBarcodeF.size(); i++){ //a barcode match is a barcode match if there is an enzyme after it
+				ArrayList<Match> matches = null;
+				if(groupMatches != null && groupMatches[i] != null){
+					matches = groupMatches[i];
+				}else if(probB < 0.0){
+					matches = UtilMethods.searchWithN(read.readF.packed(), 0, Math.min(read.readF.sequence.length(), maxOffsetB + sampleBarcodeF.get(i).length() +
+							barcodeEdits(sampleBarcodeF.get(i).length())), sampleBarcodeF.get(i), editMaxB, allowIndelsB, false, minOverlapB, wildcard, barcodePatternsF.get(i));
+				}else{
+					matches = UtilMethods.searchWithProb(read.readF.sequence, 0, Math.min(read.readF.sequence.length(), maxOffsetB + sampleBarcodeF.get(i).length() +
+							barcodeEdits(sampleBarcodeF.get(i).length())), read.readF.quality, sampleBarcodeF.get(i), null, probB, minOverlapB, wildcard);
+				}
+				if(!matchSample(read, i, matches, res))
+					break;
+			}
+		}
+	}
+	
+	//looks up the barcodes at every offset where searching could find them, and only checks the samples that have them
+	//if the indexes are not complete, then only the exact barcodes are looked up
+	//an exact match always beats the matches with edits, so the other samples do not need to be searched if one of the exact matches has an enzyme after it
+	//returns false if the samples still need to be searched
+	private boolean matchIndexedBarcodes(Read read, BarcodeMatch res){
+		PackedSequence packed = read.readF.packed();
+		int count = 0;
+		for(BarcodeIndex index : barcodeIndexes){
+			int length = index.length();
+			//same end as the search, so the barcode must fit between the start of the read and there
+			int end = Math.min(read.readF.sequence.length(), maxOffsetB + length + barcodeEdits(length));
+			for(int o = 0; o + length <= end; o++){
+				long key = index.key(packed, o, wildcard);
+				if(key == -1L) //'N' could match any barcode
+					return false;
+				int[] entries = index.get(key);
+				if(entries == null)
+					continue;
+				for(int entry : entries){
+					if(count == res.candidates.length)
+						res.candidates = Arrays.copyOf(res.candidates, count * 2);
+					//ordered by sample, then by where the barcode ends
+					res.candidates[count++] = ((long)BarcodeIndex.sample(entry) << 32) | ((long)(o + length - 1) << 2) | BarcodeIndex.mismatches(entry);
+				}
+			}
+		}
+		if(!matchCandidates(read, count, res))
+			return true;
+		return res.sample != -1 || barcodeIndexesComplete;
+	}
+	
+	//finds where the enzymes are in the start of the read, and looks up the barcodes that end right before them (or up to maxOffsetB bases before them)
+	//a barcode match only counts if one of its enzymes is after it, so the barcodes at other places do not change the result
+	//returns false if the samples still need to be searched
+	private boolean matchAnchoredBarcodes(Read read, BarcodeMatch res){
+		PackedSequence packed = read.readF.packed();
+		int n = read.readF.sequence.length();
+		int end = Math.min(n, anchorEnd);
+		if(res.barcodeEnds.length < end)
+			res.barcodeEnds = new boolean[end];
+		Arrays.fill(res.barcodeEnds, 0, end, false);
+		ArrayList<Match>[] curr = Match.lists(BarcodeGroup.MAX_BITS);
+		for(BarcodeGroup group : anchorEnzymes){
+			UtilMethods.searchWithNMulti(packed, 0, end, group.length, group.samples.length, editMaxB, false, Integer.MAX_VALUE, group.pm, curr);
+			for(int p = 0; p < group.samples.length; p++){
+				for(Match match : curr[p]){
+					int start = match.end - group.length + 1;
+					for(int x = Math.max(0, start - 1 - maxOffsetB); x < start; x++)
+						res.barcodeEnds[x] = true;
+				}
+			}
+		}
+		
+		int count = 0;
+		for(BarcodeIndex index : anchorIndexes){
+			int length = index.length();
+			//same end as the search, so the barcode must fit between the start of the read and there
+			int barcodeEnd = Math.min(end, maxOffsetB + length);
+			for(int x = length - 1; x < barcodeEnd; x++){
+				if(!res.barcodeEnds[x])
+					continue;
+				long key = index.key(packed, x - length + 1, wildcard);
+				if(key == -1L) //'N' could match any barcode
+					return false;
+				int[] entries = index.get(key);
+				if(entries == null)
+					continue;
+				for(int entry : entries){
+					if(count == res.candidates.length)
+						res.candidates = Arrays.copyOf(res.candidates, count * 2);
+					res.candidates[count++] = ((long)BarcodeIndex.sample(entry) << 32) | ((long)x << 2) | BarcodeIndex.mismatches(entry);
+				}
+			}
+		}
+		matchCandidates(read, count, res);
+		return true;
+	}
+	
+	//checks the barcode matches that were looked up, ordered by sample and then by where the barcode ends
+	//returns false if the read has multiple barcode matches and only one is allowed
+	private boolean matchCandidates(Read read, int count, BarcodeMatch res){
+		Arrays.sort(res.candidates, 0, count);
+		ArrayList<Match> matches = new ArrayList<Match>();
+		for(int c = 0; c < count;){
+			int sample = (int)(res.candidates[c] >>> 32);
+			matches.clear();
+			for(; c < count && (int)(res.candidates[c] >>> 32) == sample; c++)
+				matches.add(new Match((int)res.candidates[c] >>> 2, (int)res.candidates[c] & 3, sampleBarcodeF.get(sample).length()));
+			if(!matchSample(read, sample, matches, res))
+				return false;
+		}
+		return true;
+	}
+	
+	//joins each sample's barcode with its enzymes, if they are matched without insertions and deletions
+	//empty barcodes and enzymes are left to the searches, since searching for an empty pattern always matches at the start of the read
+	private ArrayList<FusedPattern> fusePatterns(ArrayList<String> barcodes, ArrayList<ArrayList<String>> enzymes){
+		if(probB >= 0.0 || allowIndelsB)
+			return null;
+		ArrayList<FusedPattern> res = new ArrayList<FusedPattern>();
+		for(int i = 0; i < barcodes.size(); i++){
+			if(barcodes.get(i).isEmpty() || enzymes.get(i).contains(""))
+				return null;
+			res.add(new FusedPattern(barcodes.get(i), enzymes.get(i)));
+		}
+		return res;
+	}
+	
+	//puts the barcodes of each length in a trie, if there are enough samples and every barcode can be in one
+	private BarcodeTrie[] buildBarcodeTries(ArrayList<String> barcodes){
+		if(probB >= 0.0 || barcodes.size() < BARCODE_TRIE_MIN_SAMPLES)
+			return null;
+		TreeSet<Integer> lengths = new TreeSet<Integer>();
+		for(String barcode : barcodes){
+			if(barcode.isEmpty() || barcode.length() > BarcodeTrie.MAX_LENGTH)
+				return null;
+			lengths.add(barcode.length());
+		}
+		BarcodeTrie[] res = new BarcodeTrie[lengths.size()];
+		int i = 0;
+		for(int length : lengths)
+			res[i++] = new BarcodeTrie(barcodes, length);
+		return res;
+	}
+	
+	//searches for all barcodes with the tries, and only checks the samples that have matches, in order
+	//the reads end at a different place for each barcode length, so each trie is searched separately
+	private void matchBarcodeTries(Read read, BarcodeMatch res){
+		for(BarcodeTrie trie : barcodeTriesF){
+			int length = trie.length();
+			trie.search(read.readF.packed(), Math.min(read.readF.sequence.length(), maxOffsetB + length +
+					barcodeEdits(length)), editMaxB, allowIndelsB, minOverlapB, wildcard, res);
+		}
+		Arrays.sort(res.matched, 0, res.matchedCount);
+		for(int i = 0; i < res.matchedCount; i++){
+			if(!matchSample(read, res.matched[i], res.sampleMatches[res.matched[i]], res))
+				break;
+		}
+		res.clearMatches();
+	}
+	
+	//searches for the barcodes of each group at the same time, in one scan of the start of the read
+	//the matches of each sample are the same as when searching for its barcode alone, and samples that are not in a group have no matches yet
+	private ArrayList<Match>[] searchBarcodeGroups(Read read){
+		ArrayList<Match>[] res = Match.lists(sampleBarcodeF.size());
+		ArrayList<Match>[] curr = Match.lists(BarcodeGroup.MAX_BITS);
+		for(BarcodeGroup group : barcodeGroupsF){
+			UtilMethods.searchWithNMulti(read.readF.packed(), 0, Math.min(read.readF.sequence.length(), maxOffsetB + group.length +
+					barcodeEdits(group.length)), group.length, group.samples.length, editMaxB, allowIndelsB, minOverlapB, group.pm, curr);
+			for(int p = 0; p < group.samples.length; p++)
+				res[group.samples[p]] = curr[p];
+		}
+		return res;
+	}
+	
+	//checks the barcode matches of one sample for enzymes after them, and saves the match if it is better than the best match so far
+	//the best match may be reached by multiple different match locations or different barcodes/enzymes, but the best location is chosen
+	//returns false if the read has multiple barcode matches and only one is allowed, so no other samples need to be checked
+	private boolean matchSample(Read read, int i, ArrayList<Match> matches, BarcodeMatch res){
+		boolean isMatch = false;
+		for(int j = 0; j < matches.size(); j++){
+			Match match = matches.get(j);
+			int[] ends = matchEnzyme(read, i, match, res);
+			if(ends == null)
+				continue;
+			isMatch = true;
+			saveMatch(read, i, match, ends, res);
+		}
+		return countMatch(isMatch, res);
+	}
+	
+	//same as matchSample, but the barcode matches and the enzymes after them are found together with the sample's fused patterns
+	private boolean matchFused(Read read, int i, BarcodeMatch res){
+		FusedPattern pattern = fusedPatternsF.get(i);
+		if(res.enzymeEnds.length < pattern.maxMatches(maxOffsetB))
+			res.enzymeEnds = new int[pattern.maxMatches(maxOffsetB)];
+		res.fusedMatches.clear();
+		int count = pattern.scan(read.readF.packed(), read.readF.sequence.length(), maxOffsetB, editMaxB, minOverlapB, wildcard, res.fusedMatches, res.enzymeEnds);
+		boolean isMatch = false;
+		for(int j = 0; j < count; j++){
+			Match match = res.fusedMatches.get(j);
+			int[] ends = null;
+			if(inputFileR == null || !checkReversedReads){
+				ends = new int[]{res.enzymeEnds[j], -1, -1};
+			}else{
+				int[] ends2 = matchReversed(read, i, res);
+				if(ends2 != null)
+					ends = new int[]{res.enzymeEnds[j], ends2[0], ends2[1]};
+			}
+			if(ends == null)
+				continue;
+			isMatch = true;
+			saveMatch(read, i, match, ends, res);
+		}
+		return countMatch(isMatch, res);
+	}
+	
+	//saves a barcode match and the ends of the enzymes after it if it is better than the best match so far
+	private void saveMatch(Read read, int i, Match match, int[] ends, BarcodeMatch res){
+		if(match.edits <= res.minEdit && (match.edits < res.minEdit || match.length > res.barcodeLength)){
+			//if all checks are passed, then the current barcodes/enzymes are saved as the matched barcodes/enzymes
+			res.sample = i;
+			res.barcodeEnd = match.end + 1;
+			res.barcodeLength = match.length;
+			res.enzymeEnd = ends[0];
+			if(inputFileR != null){
+				if(checkReversedReads){
+					res.barcodeEnd2 = ends[1];
+					res.enzymeEnd2 = ends[2];
+				}else{
+					copyEndsToReversed(read, res);
+				}
+			}
+			res.minEdit = match.edits;
+		}
+	}
+	
+	//when the reversed reads are not checked, the barcode and enzyme are removed from the same places in the reversed read, as far as it goes
+	private void copyEndsToReversed(Read read, BarcodeMatch res){
+		res.barcodeEnd2 = Math.max(0, Math.min(read.readR.sequence.length(), res.barcodeEnd/* - randUMILength*/));
+		res.enzymeEnd2 = Math.max(0, Math.min(read.readR.sequence.length(), res.enzymeEnd/* - randUMILength*/));
+	}
+	
+	//counts a sample that has a barcode match with enzymes after it
+	//returns false if the read has multiple barcode matches and only one is allowed, so no other samples need to be checked
+	private boolean countMatch(boolean isMatch, BarcodeMatch res){
+		if(isMatch){
+			if(singleBarcodeMatchOnly && res.matchCount >= 1){
+				res.sample = -1;
+				return false;
+			}
+			res.matchCount++;
+		}
+		return true;
+	}
+	
+	//looks for the first of a sample's enzymes that is right after a barcode match
+	//when checking reversed reads, the reversed read must also have the sample's barcode and enzyme
+	//returns the ends of the enzyme, the reversed barcode, and the reversed enzyme, or null if the barcode match does not count
+	private int[] matchEnzyme(Read read, int i, Match match, BarcodeMatch res){
+		for(int k : enzymeTableF.sampleEnzymes(i)){
+			ArrayList<Match> enzymeMatches = searchEnzyme(read.readF, enzymeTableF, res.enzymesF, k, match.end + 1/* + randUMILength*/);
+			if(enzymeMatches.isEmpty())
+				continue;
+			int enzymeEnd = enzymeMatches.get(enzymeMatches.size() - 1).end + 1;
+			if(inputFileR == null || !checkReversedReads)
+				return new int[]{enzymeEnd, -1, -1};
+			//the reversed read does not depend on which forwards enzyme matched, so the other enzymes would not change the result
+			int[] ends2 = matchReversed(read, i, res);
+			return ends2 == null ? null : new int[]{enzymeEnd, ends2[0], ends2[1]};
+		}
+		return null;
+	}
+	
+	//searches for an enzyme after a barcode match that ends right before start
+	//the matches are saved, so other barcode matches that end at the same place, and other samples with the same enzyme, do not search again
+	private ArrayList<Match> searchEnzyme(FastQRecord record, EnzymeTable table, EnzymeTable.Results results, int k, int start){
+		ArrayList<Match> res = results.get(k, start);
+		if(res != null)
+			return res;
+		String enzyme = table.enzyme(k);
+		int end = Math.min(record.sequence.length(), maxOffsetB + start + enzyme.length() +
+				barcodeEdits(enzyme.length()));
+		if(probB < 0.0)
+			res = UtilMethods.searchWithN(record.packed(), start, end, enzyme, editMaxB, allowIndelsB, true, Integer.MAX_VALUE, wildcard, table.patterns(k));
+		else
+			res = UtilMethods.searchWithProb(record.sequence, start, end, record.quality, enzyme, null, probB, minOverlapB, wildcard);
+		results.put(k, start, res);
+		return res;
+	}
+	
+	//checks the reversed read for the barcode and enzyme of a sample
+	//the reversed read does not depend on the forwards matches, so it is only checked once for each sample in a read, and then joined with every forwards match of the sample
+	//returns the ends of the best reversed barcode and its enzyme, or null if they are not found
+	private int[] matchReversed(Read read, int i, BarcodeMatch res){
+		int[] ends = res.reversedEnds(i);
+		if(ends == null){
+			ends = searchReversed(read, i, res);
+			res.setReversedEnds(i, ends);
+		}
+		return ends == BarcodeMatch.NOT_FOUND ? null : ends;
+	}
+	
+	private int[] searchReversed(Read read, int i, BarcodeMatch res){
+		int tempBarcodeEnd2 = -1;
+		int tempBarcodeLength2 = 0;
+		int tempEnzymeEnd2 = -1;
+		int minEdit2 = Integer.MAX_VALUE;
+		ArrayList<Match> rMatches = null; //check for the reversed barcode and enzyme
+		if(probB < 0.0){
+			rMatches = UtilMethods.searchWithN(read.readR.packed(), 0, Math.min(read.readR.sequence.length(), maxOffsetB + reversedBarcodes.get(i).length() +
+					barcodeEdits(reversedBarcodes.get(i).length())),
+					reversedBarcodes.get(i), editMaxB, allowIndelsB, false, minOverlapB, wildcard, barcodePatternsR.get(i));
+		}else{
+			rMatches = UtilMethods.searchWithProb(read.readR.sequence, 0, Math.min(read.readR.sequence.length(), maxOffsetB + reversedBarcodes.get(i).length() +
+					barcodeEdits(reversedBarcodes.get(i).length())), read.readR.quality,
+					reversedBarcodes.get(i), null, probB, minOverlapB, wildcard);
+		}
+		for(int ri = 0; ri < rMatches.size(); ri++){
+			for(int rj : enzymeTableR.sampleEnzymes(i)){
+				ArrayList<Match> rEnzymeMatches = searchEnzyme(read.readR, enzymeTableR, res.enzymesR, rj, rMatches.get(ri).end + 1/* + randUMILength*/);
+				if(!rEnzymeMatches.isEmpty()){
+					if(rMatches.get(ri).edits <= minEdit2 && (rMatches.get(ri).edits < minEdit2 || rMatches.get(ri).length > tempBarcodeLength2)){
+						tempBarcodeEnd2 = rMatches.get(ri).end + 1;
+						tempBarcodeLength2 = rMatches.get(ri).length;
+						tempEnzymeEnd2 = rEnzymeMatches.get(rEnzymeMatches.size() - 1).end + 1;
+						minEdit2 = rMatches.get(ri).edits;
+						break;
+					}
+				}
+			}
+		}
+		return tempEnzymeEnd2 == -1 ? BarcodeMatch.NOT_FOUND : new int[]{tempBarcodeEnd2, tempEnzymeEnd2};
+	}
+	
+	//trimming stage: removes the barcodes, enzymes, N, low quality bases, and adapters, and merges paired end reads
+	//reads that are not trimmed or merged when they need to be, or are too long or short, are filtered out here too
+	private void trimBatch(ReadBatch batch){
+		for(int n = 0; n < batch.size; n++){
+			if(!batch.passed[n])
+				continue;
+			Read read = batch.reads[n];
+			int barcodeEnd = batch.barcodeEnd[n];
+			int enzymeEnd = batch.enzymeEnd[n];
+			int barcodeEnd2 = batch.barcodeEnd2[n];
+			int enzymeEnd2 = batch.enzymeEnd2[n];
+			long mark = allocationBudget == null ? 0L : AllocationBudget.threadBytes();
+			
+			//remove barcode and enzyme
+			if(sampleInfoFile != null){
+				if(indexFileF == null){
+					if(removeEnzyme && removeBarRand){
+						read.readF.trim(enzymeEnd, read.readF.sequence.length());
+					}else if(removeEnzyme){
+						read.readF.sequence = read.readF.sequence.subSequence(0, barcodeEnd/* + randUMILength*/).concat(read.readF.sequence.subSequence(enzymeEnd));
+						read.readF.quality = read.readF.quality.subSequence(0, barcodeEnd/* + randUMILength*/).concat(read.readF.quality.subSequence(enzymeEnd));
+					}else if(removeBarRand){
+						read.readF.trim(barcodeEnd/* + randUMILength*/, read.readF.sequence.length());
+					}
+				}
+				
+				if(inputFileR != null){
+					if(indexFileR == null){
+						if(removeEnzyme && removeBarRand){
+							read.readR.trim(enzymeEnd2, read.readR.sequence.length());
+						}else if(removeEnzyme){
+							read.readR.sequence = read.readR.sequence.subSequence(0, barcodeEnd2).concat(read.readR.sequence.subSequence(enzymeEnd2));
+							read.readR.quality = read.readR.quality.subSequence(0, barcodeEnd2).concat(read.readR.quality.subSequence(enzymeEnd2));
+						}else if(removeBarRand){
+							read.readR.trim(barcodeEnd2, read.readR.sequence.length());
+						}
+					}
+				}
+			}
+			
+			//the trimming methods narrow the sequence and quality in place, so the lengths are saved to check if a read is trimmed
+			int length;
+			
+			int trimmedQuality = 0;
+			int removedAdapter = 0;
+			
+			if(allocationBudget != null)
+				mark = allocationBudget.charge(AllocationBudget.DEMULTIPLEX, mark);
+			
+			//trim N
+			UtilMethods.trimN(read.readF, trimNPercent);
+			if(allocationBudget != null)
+				mark = allocationBudget.charge(AllocationBudget.TRIM_N, mark);
+			
+			//quality trim
+			length = read.readF.sequence.length();
+			if(trimAlgorithm){
+				UtilMethods.qualityTrim2(read.readF, qualityTrimQScore1, true, qualityTrimLength);
+				UtilMethods.qualityTrim2(read.readF, qualityTrimQScore2, false, qualityTrimLength);
+			}else{
+				UtilMethods.qualityTrim1(read.readF, qualityTrimQScore1, true, qualityTrimLength);
+				UtilMethods.qualityTrim1(read.readF, qualityTrimQScore2, false, qualityTrimLength);
+			}
+			if(length != read.readF.sequence.length()){
+				trimmedQuality++;
+			}
+			if(allocationBudget != null)
+				mark = allocationBudget.charge(AllocationBudget.QUALITY_TRIM, mark);
+			//remove adapters
+			length = read.readF.sequence.length();
+			UtilMethods.removeAdapters(read.readF, adaptersF, editMaxA, minOverlapA, maxOffsetA, allowIndelsA, probA, wildcard, adapterPatternsF);
+			if(length != read.readF.sequence.length()){
+				removedAdapter++;
+			}
+			if(allocationBudget != null)
+				mark = allocationBudget.charge(AllocationBudget.ADAPTERS, mark);
+			
+			//do the same for reversed reads
+			if(inputFileR != null){
+				UtilMethods.trimN(read.readR, trimNPercent);
+				if(allocationBudget != null)
+					mark = allocationBudget.charge(AllocationBudget.TRIM_N, mark);
+				
+				length = read.readR.sequence.length();
+				if(trimAlgorithm){
+					UtilMethods.qualityTrim2(read.readR, qualityTrimQScore1, true, qualityTrimLength);
+					UtilMethods.qualityTrim2(read.readR, qualityTrimQScore2, false, qualityTrimLength);
+				}else{
+					UtilMethods.qualityTrim1(read.readR, qualityTrimQScore1, true, qualityTrimLength);
+					UtilMethods.qualityTrim1(read.readR, qualityTrimQScore2, false, qualityTrimLength);
+				}
+				if(length != read.readR.sequence.length()){
+					trimmedQuality++;
+				}
+				if(allocationBudget != null)
+					mark = allocationBudget.charge(AllocationBudget.QUALITY_TRIM, mark);
+				length = read.readR.sequence.length();
+				UtilMethods.removeAdapters(read.readR, adaptersR, editMaxA, minOverlapA, maxOffsetA, allowIndelsA, probA, wildcard, adapterPatternsR);
+				if(length != read.readR.sequence.length()){
+					removedAdapter++;
+				}
+				if(allocationBudget != null)
+					mark = allocationBudget.charge(AllocationBudget.ADAPTERS, mark);
+			}
+			
+			boolean mergedReads = false;
+			//merge paired-end reads
+			if(mergePairedEnds && inputFileR != null){
+				ByteSlice[] merged = UtilMethods.mergeReads(read.readF, read.readR, editMaxM, probM, minOverlapM, wildcard);
+				if(merged[0].length() != read.readF.sequence.length() + read.readR.sequence.length()){
+					mergedReads = true;
+				}
+				read.readF.sequence = merged[0];
+				read.readF.quality = merged[1];
+				if(allocationBudget != null)
+					allocationBudget.charge(AllocationBudget.MERGE, mark);
+			}
+			
+			batch.trimmedQuality[n] = trimmedQuality;
+			batch.removedAdapter[n] = removedAdapter;
+			batch.merged[n] = mergedReads;
+			
+			//check if reads are trimmed or merged and if length is too long or short
+			batch.passed[n] = (!removeUntrimmedReads || trimmedQuality == (inputFileR == null ? 1 : 2)) && (!removeNoAdapterReads || removedAdapter == (inputFileR == null ? 1 : 2)) && (!removeUnmergedReads || mergedReads) &&
+					minLength <= read.readF.sequence.length() && read.readF.sequence.length() <= maxLength && (inputFileR == null || mergePairedEnds || (minLength <= read.readR.sequence.length() && read.readR.sequence.length() <= maxLength));
+		}
+	}
+	
+	//opens the output files of a sample (or the kept reads) the first time a read belongs to it
+	//this lazy initialization will not create files for samples whose barcodes do not exist in any reads
+	private void openSampleWriters(int barcodeIndex, OutputStream[] writersF, OutputStream[] writersR, OutputStream[] writersIF, OutputStream[] writersIR, ConcurrentLinkedQueue<Strings> files) throws Exception{
+		Strings strings = new Strings();
+		if(sampleInfoFile == null){
+			if(writersF[0] == null && stdoutOutput){ //interleaved if there are reversed reads
+				writersF[0] = outputGZIP ? new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(FileDescriptor.out), BUFFER_SIZE_GZIP, followInput), BUFFER_SIZE) : new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), BUFFER_SIZE);
+				if(!mergePairedEnds && inputFileR != null)
+					writersR[0] = writersF[0];
+			}else if(writersF[0] == null){ //forwards
+				if(!outputGZIP && !keepFirstDup && !keepBestDup){
+					writersF[0] = new BufferedOutputStream(new FileOutputStream(outputDir + "reads_kept_R1.fastq"), BUFFER_SIZE);
+					strings.add(outputDir + "reads_kept_R1.fastq");
+					
+					if(indexFileF != null){
+						writersIF[0] = new BufferedOutputStream(new FileOutputStream(outputDir + "index_kept_R1.fastq"), BUFFER_SIZE);
+						strings.add(outputDir + "index_kept_R1.fastq");
+					}
+				}else{
+					writersF[0] = new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(((keepFirstDup || keepBestDup) ? (outputDir + "temp" + File.separatorChar) : outputDir) + "reads_kept_R1.fastq.gz"), BUFFER_SIZE_GZIP, followInput), BUFFER_SIZE);
+					strings.add(((keepFirstDup || keepBestDup) ? (outputDir + "temp" + File.separatorChar) : outputDir) + "reads_kept_R1.fastq.gz");
+					
+					if(indexFileF != null){
+						writersIF[0] = new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(((keepFirstDup || keepBestDup) ? (outputDir + "temp" + File.separatorChar) : outputDir) + "index_kept_R1.fastq.gz"), BUFFER_SIZE_GZIP, followInput), BUFFER_SIZE);
+						strings.add(((keepFirstDup || keepBestDup) ? (outputDir + "temp" + File.separatorChar) : outputDir) + "index_kept_R1.fastq.gz");
+					}
+				}
+			}
+			
+			if(!mergePairedEnds && inputFileR != null && writersR[0] == null){ //reversed
+				if(!outputGZIP && !keepFirstDup && !keepBestDup){
+					writersR[0] = new BufferedOutputStream(new FileOutputStream(outputDir + "reads_kept_R2.fastq"), BUFFER_SIZE);
+					strings.add(outputDir + "reads_kept_R2.fastq");
+					
+					if(indexFileR != null){
+						writersIR[0] = new BufferedOutputStream(new FileOutputStream(outputDir + "index_kept_R2.fastq"), BUFFER_SIZE);
+						strings.add(outputDir + "index_kept_R2.fastq");
+					}
+				}else{
+					writersR[0] = new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(((keepFirstDup || keepBestDup) ? (outputDir + "temp" + File.separatorChar) : outputDir) + "reads_kept_R2.fastq.gz"), BUFFER_SIZE_GZIP, followInput), BUFFER_SIZE);
+					strings.add(((keepFirstDup || keepBestDup) ? (outputDir + "temp" + File.separatorChar) : outputDir) + "reads_kept_R2.fastq.gz");
+					
+					if(indexFileR != null){
+						writersIR[0] = new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(((keepFirstDup || keepBestDup) ? (outputDir + "temp" + File.separatorChar) : outputDir) + "index_kept_R2.fastq.gz"), BUFFER_SIZE_GZIP, followInput), BUFFER_SIZE);
+						strings.add(((keepFirstDup || keepBestDup) ? (outputDir + "temp" + File.separatorChar) : outputDir) + "index_kept_R2.fastq.gz");
+					}
+				}
+			}
+		}else{
+			String name = sampleMapF.get(sampleBarcodeF.get(barcodeIndex));
+			String dir = (keepFirstDup || keepBestDup) ? (outputDir + "temp" + File.separatorChar) : outputDir;
+			boolean gzip = outputGZIP || keepFirstDup || keepBestDup;
+			String ext = gzip ? ".fastq.gz" : ".fastq";
+			if(writersF[barcodeIndex] == null){ //forwards
+				writersF[barcodeIndex] = openSampleFile(dir + "sample_" + name + "_R1" + ext, gzip);
+				strings.add(dir + "sample_" + name + "_R1" + ext);
+				
+				if(indexFileF != null){
+					writersIF[barcodeIndex] = openSampleFile(dir + "index_" + name + "_R1" + ext, gzip);
+					strings.add(dir + "index_" + name + "_R1" + ext);
+				}
+			}
+			
+			if(!mergePairedEnds && inputFileR != null && writersR[barcodeIndex] == null){ //reversed
+				writersR[barcodeIndex] = openSampleFile(dir + "sample_" + name + "_R2" + ext, gzip);
+				strings.add(dir + "sample_" + name + "_R2" + ext);
+				
+				if(indexFileR != null){
+					writersIR[barcodeIndex] = openSampleFile(dir + "index_" + name + "_R2" + ext, gzip);
+					strings.add(dir + "index_" + name + "_R2" + ext);
+				}
+			}
+		}
+		
+		if(strings.size() > 0) //if a new writer was created
+			files.offer(strings);
+	}
+	
+	//opens one of the files of a sample, through the pool of open files if there is one
+	//the pool only opens the file once something is written to it, and opens it again in append mode if it was closed to make room for other files
+	private OutputStream openSampleFile(String path, boolean gzip) throws Exception{
+		OutputPool.Opener opener = (append) -> gzip ? new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(path, append), BUFFER_SIZE_GZIP, followInput), BUFFER_SIZE) :
+				new BufferedOutputStream(new FileOutputStream(path, append), BUFFER_SIZE);
+		return outputPool == null ? opener.open(false) : outputPool.stream(opener);
+	}
+	
+	//opens the files for undetermined reads the first time there is an undetermined read
+	private void openUndeterminedWriters(OutputStream[] undeterminedWriterF, OutputStream[] undeterminedWriterR) throws Exception{
+		if(undeterminedWriterF[0] == null){ //initialize writers for the undetermined files if they have not already been initialized
+			if(outputGZIP){
+				undeterminedWriterF[0] = new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(outputDir + (sampleInfoFile == null ? "reads" : "sample") + "_undetermined_R1.fastq.gz"), BUFFER_SIZE_GZIP, followInput), BUFFER_SIZE);
+				if(inputFileR != null)
+					undeterminedWriterR[0] = new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(outputDir + (sampleInfoFile == null ? "reads" : "sample") + "_undetermined_R2.fastq.gz"), BUFFER_SIZE_GZIP, followInput), BUFFER_SIZE);
+				if(indexFileF != null){
+					undeterminedWriterF[1] = new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(outputDir + "index_undetermined_R1.fastq.gz"), BUFFER_SIZE_GZIP, followInput), BUFFER_SIZE);
+					if(inputFileR != null)
+						undeterminedWriterR[1] = new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(outputDir + "index_undetermined_R2.fastq.gz"), BUFFER_SIZE_GZIP, followInput), BUFFER_SIZE);
+				}
+			}else{
+				undeterminedWriterF[0] = new BufferedOutputStream(new FileOutputStream(outputDir + (sampleInfoFile == null ? "reads" : "sample") + "_undetermined_R1.fastq"), BUFFER_SIZE);
+				if(inputFileR != null)
+					undeterminedWriterR[0] = new BufferedOutputStream(new FileOutputStream(outputDir + (sampleInfoFile == null ? "reads" : "sample") + "_undetermined_R2.fastq"), BUFFER_SIZE);
+				if(indexFileF != null){
+					undeterminedWriterF[1] = new BufferedOutputStream(new FileOutputStream(outputDir + "index_undetermined_R1.fastq"), BUFFER_SIZE);
+					if(inputFileR != null)
+						undeterminedWriterR[1] = new BufferedOutputStream(new FileOutputStream(outputDir + "index_undetermined_R2.fastq"), BUFFER_SIZE);
+				}
+			}
+			generatedUndeterminedFile = true;
+		}
+	}
+	
+	//finds the sample whose barcode matches the index reads, or -1 if there is no match
+	private int matchIndexBarcode(FastQRecord indexF, FastQRecord indexR){
+		if(indexBarcodeIndexesF != null){
+			int res = lookupIndexBarcode(indexF, indexR);
+			if(res != -2)
+				return res;
+		}
+		int barcodeIndex = -1;
+		int barcodeEnd = -1;
+		int minEdit = Integer.MAX_VALUE;
+		int barcodeMatchCount = 0; //used for checking if a read matches multiple barcodes
+		
+		for(int i = 0; i < sampleBarcodeF.size(); i++){
+			ArrayList<Match> matches = null;
+			if(probB < 0.0){
+				matches = UtilMethods.searchWithN(indexF.packed(), 0, Math.min(indexF.sequence.length(), sampleBarcodeF.get(i).length() +
+						barcodeEdits(sampleBarcodeF.get(i).length())),
+						sampleBarcodeF.get(i), editMaxB, allowIndelsB, true, minOverlapB, wildcard, barcodePatternsF.get(i));
+			}else{
+				matches = UtilMethods.searchWithProb(indexF.sequence, 0, Math.min(indexF.sequence.length(), sampleBarcodeF.get(i).length() +
+						barcodeEdits(sampleBarcodeF.get(i).length())),
+						indexF.quality, sampleBarcodeF.get(i), null, probB, minOverlapB, wildcard);
+			}
+			if(!matches.isEmpty()){
+				ArrayList<Match> rMatches = null; //check reversed reads for barcode matches
+				if(inputFileR != null && checkReversedReads){
+					if(probB < 0.0){
+						rMatches = UtilMethods.searchWithN(indexR.packed(), randUMILength, Math.min(indexR.sequence.length(), randUMILength +
+								reversedBarcodes.get(i).length() + barcodeEdits(reversedBarcodes.get(i).length())),
+								reversedBarcodes.get(i), editMaxB, allowIndelsB, true, Integer.MAX_VALUE, wildcard, barcodePatternsR.get(i));
+					}else{
+						rMatches = UtilMethods.searchWithProb(indexR.sequence, randUMILength, Math.min(indexR.sequence.length(), randUMILength +
+								reversedBarcodes.get(i).length() + barcodeEdits(reversedBarcodes.get(i).length())),
+								indexR.quality, reversedBarcodes.get(i), null, probB, minOverlapB, wildcard);
+					}
+				}
+				if((inputFileR == null || !checkReversedReads || !rMatches.isEmpty()) && matches.get(matches.size() - 1).edits <= minEdit && (matches.get(matches.size() - 1).edits < minEdit || matches.get(matches.size() - 1).end + 1 > barcodeEnd)){
+					barcodeIndex = i;
+					barcodeEnd = matches.get(matches.size() - 1).end + 1;
+					minEdit = matches.get(matches.size() - 1).edits;
+				}
+				if(singleBarcodeMatchOnly && barcodeMatchCount >= 1){
+					barcodeIndex = -1;
+					break;
+				}
+				barcodeMatchCount++;
+			}
+		}
+		return barcodeIndex;
+	}	
+	//same as searching for every sample's barcode in the index reads, but the barcodes with mismatches are looked up instead
+	//since there are no offsets, each barcode can only match at the start of the index read, so its neighbors are all of its matches
+	//returns -2 if an 'N' could match any barcode, so the index reads need to be searched
+	private int lookupIndexBarcode(FastQRecord indexF, FastQRecord indexR){
+		int barcodeIndex = -1;
+		int barcodeEnd = -1;
+		int minEdit = Integer.MAX_VALUE;
+		int barcodeMatchCount = 0; //used for checking if a read matches multiple barcodes
+		boolean checkReversed = inputFileR != null && checkReversedReads;
+		
+		PackedSequence packed = indexF.packed();
+		int[] entries = null;
+		for(BarcodeIndex index : indexBarcodeIndexesF){
+			if(index.length() > indexF.sequence.length())
+				continue;
+			long key = index.key(packed, 0, wildcard);
+			if(key == -1L)
+				return -2;
+			int[] curr = index.get(key);
+			if(curr == null)
+				continue;
+			if(entries == null){
+				entries = curr;
+			}else{ //barcodes of different lengths, so the samples need to be in order again
+				entries = Arrays.copyOf(entries, entries.length + curr.length);
+				System.arraycopy(curr, 0, entries, entries.length - curr.length, curr.length);
+				Arrays.sort(entries);
+			}
+		}
+		if(entries == null)
+			return -1;
+		if(checkReversed && wildcard){
+			PackedSequence packedR = indexR.packed();
+			for(int i = randUMILength; i < packedR.length() && i < randUMILength + indexBarcodeIndexesR[indexBarcodeIndexesR.length - 1].length(); i++){
+				if(packedR.code(i) == PackedSequence.N)
+					return -2;
+			}
+		}
+		
+		for(int entry : entries){
+			int i = BarcodeIndex.sample(entry);
+			int edits = BarcodeIndex.mismatches(entry);
+			int length = sampleBarcodeF.get(i).length();
+			if((!checkReversed || lookupReversedIndexBarcode(indexR, i)) && edits <= minEdit && (edits < minEdit || length > barcodeEnd)){
+				barcodeIndex = i;
+				barcodeEnd = length;
+				minEdit = edits;
+			}
+			if(singleBarcodeMatchOnly && barcodeMatchCount >= 1)
+				return -1;
+			barcodeMatchCount++;
+		}
+		return barcodeIndex;
+	}
+	
+	//checks if a sample's reversed barcode is after the UMI in the reversed index read
+	private boolean lookupReversedIndexBarcode(FastQRecord indexR, int i){
+		int length = sampleBarcodeR.get(i).length();
+		if(randUMILength + length > indexR.sequence.length())
+			return false;
+		for(BarcodeIndex index : indexBarcodeIndexesR){
+			if(index.length() != length)
+				continue;
+			int[] entries = index.get(index.key(indexR.packed(), randUMILength, wildcard));
+			if(entries == null)
+				return false;
+			for(int entry : entries){
+				if(BarcodeIndex.sample(entry) == i)
+					return true;
+			}
+		}
+		return false;
+	}
+	
+	
+	private static void flushAll(OutputStream... writers) throws Exception{
+		for(OutputStream writer : writers){
+			if(writer != null)
+				writer.flush();
+		}
+	}
+	
+	//fills in the stats from the counts of each lane
+	//this is called at the end of processing, and also while following input files
+	private void updateStats(LongAdder[][][] laneCounts){
+		//the combined counts are the sums of the counts for each lane
+		long[][] readCounts = new long[laneCounts[0].length][laneCounts[0][0].length];
+		for(int i = 0; i < laneCounts.length; i++){
+			for(int j = 0; j < laneCounts[i].length; j++){
+				for(int k = 0; k < laneCounts[i][j].length; k++){
+					readCounts[j][k] += laneCounts[i][j][k].sum();
+				}
+			}
+		}
+		if(sampleInfoFile == null){
+			EnumMap<Stat, String> map = stats.get("Kept");
+			map.put(Stat.SEQUENCE_COUNT, DECIMAL_FORMAT.format(readCounts[0][0]));
+			map.put(Stat.SEQUENCE_PERCENT, DECIMAL_FORMAT.format((double)readCounts[0][0] / (double)totalReadsProcessed.sum()));
+			map.put(Stat.MERGED_COUNT, DECIMAL_FORMAT.format(readCounts[0][2]));
+			map.put(Stat.MERGED_PERCENT, DECIMAL_FORMAT.format((double)readCounts[0][2] / (double)totalReadsProcessed.sum()));
+			map.put(Stat.REMOVEADAPTER_COUNT, DECIMAL_FORMAT.format(readCounts[0][3]));
+			map.put(Stat.REMOVEADAPTER_PERCENT, DECIMAL_FORMAT.format((double)readCounts[0][3] / (double)readCounts[0][0]));
+			map.put(Stat.QUALITYTRIM_COUNT, DECIMAL_FORMAT.format(readCounts[0][4]));
+			map.put(Stat.QUALITYTRIM_PERCENT, DECIMAL_FORMAT.format((double)readCounts[0][4] / (double)readCounts[0][0]));
+			map.put(Stat.BASE_COUNT, DECIMAL_FORMAT.format(readCounts[0][1]));
+			map.put(Stat.BASE_PERCENT, DECIMAL_FORMAT.format((double)readCounts[0][1] / (double)baseCount.sum()));
+		}else{
+			for(int i = 0; i < sampleBarcodeF.size(); i++){
+				EnumMap<Stat, String> map = stats.get(sampleMapF.get(sampleBarcodeF.get(i)));
+				map.put(Stat.SEQUENCE_COUNT, DECIMAL_FORMAT.format(readCounts[i][0]));
+				map.put(Stat.SEQUENCE_PERCENT, DECIMAL_FORMAT.format((double)readCounts[i][0] / (double)totalReadsProcessed.sum()));
+				map.put(Stat.MERGED_COUNT, DECIMAL_FORMAT.format(readCounts[i][2]));
+				map.put(Stat.MERGED_PERCENT, DECIMAL_FORMAT.format((double)readCounts[i][2] / (double)totalReadsProcessed.sum()));
+				map.put(Stat.REMOVEADAPTER_COUNT, DECIMAL_FORMAT.format(readCounts[i][3]));
+				map.put(Stat.REMOVEADAPTER_PERCENT, DECIMAL_FORMAT.format((double)readCounts[i][3] / (double)readCounts[i][0]));
+				map.put(Stat.QUALITYTRIM_COUNT, DECIMAL_FORMAT.format(readCounts[i][4]));
+				map.put(Stat.QUALITYTRIM_PERCENT, DECIMAL_FORMAT.format((double)readCounts[i][4] / (double)readCounts[i][0]));
+				map.put(Stat.BASE_COUNT, DECIMAL_FORMAT.format(readCounts[i][1]));
+				map.put(Stat.BASE_PERCENT, DECIMAL_FORMAT.format((double)readCounts[i][1] / (double)baseCount.sum()));
+			}
+		}
+		stats.get("Undetermined").put(Stat.SEQUENCE_COUNT, DECIMAL_FORMAT.format(readCounts[readCounts.length - 1][0]));
+		stats.get("Undetermined").put(Stat.SEQUENCE_PERCENT, DECIMAL_FORMAT.format((double)readCounts[readCounts.length - 1][0] / (double)totalReadsProcessed.sum()));
+		stats.get("Undetermined").put(Stat.BASE_COUNT, DECIMAL_FORMAT.format(readCounts[readCounts.length - 1][1]));
+		stats.get("Undetermined").put(Stat.BASE_PERCENT, DECIMAL_FORMAT.format((double)readCounts[readCounts.length - 1][1] / (double)baseCount.sum()));
+		
+		laneRows.clear();
+		if(laneCounts.length > 1){ //extra rows for each lane
+			for(int i = 0; i < laneCounts.length; i++){
+				long laneReads = 0L;
+				long laneBases = 0L;
+				for(int j = 0; j < laneCounts[i].length; j++){
+					laneReads += laneCounts[i][j][0].sum();
+					laneBases += laneCounts[i][j][1].sum();
+				}
+				long[] laneTotal = new long[5];
+				for(int j = 0; j < laneCounts[i].length; j++){
+					String row = j == laneCounts[i].length - 1 ? "Undetermined" : (sampleInfoFile == null ? "Kept" : sampleMapF.get(sampleBarcodeF.get(j)));
+					EnumMap<Stat, String> map = new EnumMap<Stat, String>(Stat.class);
+					map.putAll(stats.get(row)); //same barcodes as the combined row
+					long[] counts = new long[5];
+					for(int k = 0; k < counts.length; k++){
+						counts[k] = laneCounts[i][j][k].sum();
+						laneTotal[k] += counts[k];
+					}
+					putLaneStats(map, counts, laneReads, laneBases, j == laneCounts[i].length - 1);
+					stats.put(row + " (Lane " + (i + 1) + ")", map);
+					laneRows.add(row + " (Lane " + (i + 1) + ")");
+				}
+				EnumMap<Stat, String> map = new EnumMap<Stat, String>(stats.get("Undetermined"));
+				map.put(Stat.SEQUENCE_FORWARDS, "");
+				if(hasReversedBarcode)
+					map.put(Stat.SEQUENCE_REVERSED, "");
+				putLaneStats(map, laneTotal, laneReads, laneBases, false);
+				map.put(Stat.REMOVEADAPTER_PERCENT, DECIMAL_FORMAT.format((double)laneTotal[3] / (double)laneReads));
+				map.put(Stat.QUALITYTRIM_PERCENT, DECIMAL_FORMAT.format((double)laneTotal[4] / (double)laneReads));
+				stats.put("Total (Lane " + (i + 1) + ")", map);
+				laneRows.add("Total (Lane " + (i + 1) + ")");
+			}
+		}
+	}
+	
+	//the total stats row, this is filled in again after deduplicating
+	private void updateTotalStats(){
+		EnumMap<Stat, String> map = new EnumMap<Stat, String>(Stat.class);
+		map.put(Stat.SEQUENCE_FORWARDS, "");
+		if(hasReversedBarcode)
+			map.put(Stat.SEQUENCE_REVERSED, "");
+		map.put(Stat.SEQUENCE_COUNT, DECIMAL_FORMAT.format(totalReadsProcessed.sum()));
+		map.put(Stat.SEQUENCE_PERCENT, DECIMAL_FORMAT.format(1));
+		map.put(Stat.MERGED_COUNT, DECIMAL_FORMAT.format(totalReadsMerged.sum()));
+		map.put(Stat.MERGED_PERCENT, DECIMAL_FORMAT.format((double)totalReadsMerged.sum() / (double)totalReadsProcessed.sum()));
+		map.put(Stat.DEDUP_COUNT, DECIMAL_FORMAT.format(duplicatesRemoved));
+		map.put(Stat.DEDUP_PERCENT, DECIMAL_FORMAT.format((double)duplicatesRemoved / (double)totalReadsProcessed.sum()));
+		map.put(Stat.REMOVEADAPTER_COUNT, DECIMAL_FORMAT.format(totalRemovedAdapters.sum()));
+		map.put(Stat.REMOVEADAPTER_PERCENT, DECIMAL_FORMAT.format((double)totalRemovedAdapters.sum() / (double)totalReadsProcessed.sum()));
+		map.put(Stat.QUALITYTRIM_COUNT, DECIMAL_FORMAT.format(totalQualityTrimmed.sum()));
+		map.put(Stat.QUALITYTRIM_PERCENT, DECIMAL_FORMAT.format((double)totalQualityTrimmed.sum() / (double)totalReadsProcessed.sum()));
+		map.put(Stat.BASE_COUNT, DECIMAL_FORMAT.format(baseCount.sum()));
+		map.put(Stat.BASE_PERCENT, DECIMAL_FORMAT.format(1));
+		stats.put("Total", map);
+	}
+	
+	//print stats file with cool padding
+	private void writeStats(Mode mode) throws Exception{
+		int width = 25;
+		int space = 1;
+		
+		PrintWriter statsWriter = stdoutOutput ? new PrintWriter(System.err) : new PrintWriter(new BufferedWriter(new FileWriter(outputDir + "FastQParse_" + mode.description2 + ".stats"), BUFFER_SIZE_LOG));
+		StringBuilder builder = new StringBuilder();
+		String colTitle1 = sampleInfoFile == null ? "File" : "Sample";
+		builder.append(colTitle1);
+		for(int i = 0; i < width - colTitle1.length(); i++){
+			builder.append(' ');
+		}
+		for(Stat column : stats.get("Total").keySet()){
+			for(int i = 0; i < space; i++){
+				builder.append(' ');
+			}
+			builder.append(column.description);
+			for(int i = 0; i < width - column.description.length(); i++){
+				builder.append(' ');
+			}
+		}
+		statsWriter.println(builder.toString());
+		ArrayList<String> rows = new ArrayList<String>();
+		if(sampleInfoFile == null){
+			rows.add("Kept");
+		}else{
+			for(int i = 0; i < sampleBarcodeF.size(); i++)
+				rows.add(sampleMapF.get(sampleBarcodeF.get(i)));
+		}
+		rows.add("Undetermined");
+		rows.add("Total");
+		rows.addAll(laneRows);
+		for(String row : rows){
+			builder = new StringBuilder();
+			builder.append(row);
+			for(int j = 0; j < width - row.length(); j++){
+				builder.append(' ');
+			}
+			for(String item : stats.get(row).values()){
+				for(int j = 0; j < space; j++){
+					builder.append(' ');
+				}
+				builder.append(item);
+				for(int j = 0; j < width - item.length(); j++){
+					builder.append(' ');
+				}
+			}
+			statsWriter.println(builder.toString());
+		}
+		if(stdoutOutput) //stderr is still needed for the log
+			statsWriter.flush();
+		else
+			statsWriter.close();
+	}
+	
+	//fills in the stats of one row for a single lane, the percentages are out of the lane's total
+	private void putLaneStats(EnumMap<Stat, String> map, long[] counts, long laneReads, long laneBases, boolean undetermined){
+		map.put(Stat.SEQUENCE_COUNT, DECIMAL_FORMAT.format(counts[0]));
+		map.put(Stat.SEQUENCE_PERCENT, DECIMAL_FORMAT.format((double)counts[0] / (double)laneReads));
+		map.put(Stat.BASE_COUNT, DECIMAL_FORMAT.format(counts[1]));
+		map.put(Stat.BASE_PERCENT, DECIMAL_FORMAT.format((double)counts[1] / (double)laneBases));
+		if(undetermined)
+			return;
+		map.put(Stat.MERGED_COUNT, DECIMAL_FORMAT.format(counts[2]));
+		map.put(Stat.MERGED_PERCENT, DECIMAL_FORMAT.format((double)counts[2] / (double)laneReads));
+		map.put(Stat.DEDUP_COUNT, ""); //deduplicating is done after the lanes are combined
+		map.put(Stat.DEDUP_PERCENT, "");
+		map.put(Stat.REMOVEADAPTER_COUNT, DECIMAL_FORMAT.format(counts[3]));
+		map.put(Stat.REMOVEADAPTER_PERCENT, DECIMAL_FORMAT.format((double)counts[3] / (double)counts[0]));
+		map.put(Stat.QUALITYTRIM_COUNT, DECIMAL_FORMAT.format(counts[4]));
+		map.put(Stat.QUALITYTRIM_PERCENT, DECIMAL_FORMAT.format((double)counts[4] / (double)counts[0]));
+	}
+	
+	private long deduplicate(String readPathF, String readPathR, String indexPathF, String indexPathR, String outDir, String dupPath1, String dupPath2) throws Exception{
+		long removed = 0L;
+		
+		File originalFileF = new File(readPathF);
+		int pos = originalFileF.getName().indexOf(".");
+		String justNameF = pos > 0 ? originalFileF.getName().substring(0, pos) : originalFileF.getName();
+		File outputFileF = new File(outputDir + justNameF + "_dedup.fastq" + (outputGZIP ? ".gz" : ""));
+		
+		File originalFileIF = new File(indexPathF);
+		pos = originalFileIF.getName().indexOf(".");
+		String justNameIF = pos > 0 ? originalFileIF.getName().substring(0, pos) : originalFileIF.getName();
+		File outputFileIF = new File(outputDir + justNameIF + "_dedup.fastq" + (outputGZIP ? ".gz" : ""));
+		
+		File originalFileR = null;
+		String justNameR = null;
+		File outputFileR = null;
+		
+		File originalFileIR = null;
+		String justNameIR = null;
+		File outputFileIR = null;
+		
+		if(readPathR != null){
+			originalFileR = new File(readPathR);
+			pos = originalFileR.getName().indexOf(".");
+			justNameR = pos > 0 ? originalFileR.getName().substring(0, pos) : originalFileR.getName();
+			outputFileR = new File(outputDir + justNameR + "_dedup.fastq" + (outputGZIP ? ".gz" : ""));
+			
+			originalFileIR = new File(indexPathR);
+			pos = originalFileIR.getName().indexOf(".");
+			justNameIR = pos > 0 ? originalFileIR.getName().substring(0, pos) : originalFileIR.getName();
+			outputFileIR = new File(outputDir + justNameIR + "_dedup.fastq" + (outputGZIP ? ".gz" : ""));
+		}
+		
+		BufferedReader readerF;
+		BufferedReader readerR = null;
+		BufferedReader readerIF;
+		BufferedReader readerIR = null;
+		readerF = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(readPathF), BUFFER_SIZE_GZIP)), BUFFER_SIZE);
+		readerIF = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(indexPathF), BUFFER_SIZE_GZIP)), BUFFER_SIZE);
+		if(readPathR != null){
+			readerR = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(readPathR), BUFFER_SIZE_GZIP)), BUFFER_SIZE);
+			readerIR = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(indexPathR), BUFFER_SIZE_GZIP)), BUFFER_SIZE);
+		}
+		
+		if(keepFirstDup){
+			BufferedWriter writerF;
+			BufferedWriter writerR = null;
+			BufferedWriter writerIF;
+			BufferedWriter writerIR = null;
+			if(outputGZIP){
+				writerF = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(outputFileF.getAbsolutePath()), BUFFER_SIZE_GZIP)), BUFFER_SIZE);
+				writerIF = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(outputFileIF.getAbsolutePath()), BUFFER_SIZE_GZIP)), BUFFER_SIZE);
+				if(readPathR != null){
+					writerR = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(outputFileR.getAbsolutePath()), BUFFER_SIZE_GZIP)), BUFFER_SIZE);
+					writerIR = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(outputFileIR.getAbsolutePath()), BUFFER_SIZE_GZIP)), BUFFER_SIZE);
+				}
+			}else{
+				writerF = new BufferedWriter(new FileWriter(outputFileF.getAbsolutePath()), BUFFER_SIZE);
+				writerIF = new BufferedWriter(new FileWriter(outputFileIF.getAbsolutePath()), BUFFER_SIZE);
+				if(readPathR != null){
 					writerR = new BufferedWriter(new FileWriter(outputFileR.getAbsolutePath()), BUFFER_SIZE);
 					writerIR = new BufferedWriter(new FileWriter(outputFileIR.getAbsolutePath()), BUFFER_SIZE);
 				}
@@ -2252,8 +3241,14 @@ public class FastQParseMain {
 			System.out.println("Help:");
 			System.out.println("For more detailed information, visit https://github.com/Daniel-Liu-c0deb0t/FastQParse/wiki/Commands");
 			System.out.println("\nOtherwise, here are some common commands:");
-			System.out.println("'-r' - Specify one or two files after to either process single end (1 file) or paired end reads (2 files).");
-			System.out.println("'-o' - Specify a directory after to indicate the output directory.");
+			System.out.println("'-r' - Specify one or two files after to either process single end (1 file) or paired end reads (2 files). Use '-' to read single end reads from stdin, or '- -' for interleaved paired end reads. Separate files with ',' (no spaces) to process multiple lanes together, in the same order for each argument (for example, '-r L1_R1.fastq,L2_R1.fastq L1_R2.fastq,L2_R2.fastq').");
+			System.out.println("'-o' - Specify a directory after to indicate the output directory. Use '-' to write kept reads to stdout (interleaved for paired end reads) and the log and stats to stderr, when not demultiplexing.");
+			System.out.println("'--follow' - Keep reading input files that are still being written, and flush the outputs and stats every 30 seconds. Optionally specify the number of seconds without new data before stopping (default: 600). Use '--end-marker' and a file after to stop once that file exists.");
+			System.out.println("'--index-first' - Demultiplex by matching the index reads first, then write the reads of each file to their samples on their own. Needs index files, and cannot be used with merging, trimming, or filtering.");
+			System.out.println("'--alloc-budget' - Measure the bytes allocated per read in each stage (parse, demux, trimN, quality, adapters, merge, write) and print them in the log. Optionally specify a max number of bytes per read for every stage, or 'stage=max' for certain stages (for example, '--alloc-budget demux=64 write=0'). The run fails if a stage allocates more than its max.");
+			System.out.println("'--demux-strategy' - Specify how to find the barcodes in reads: 'auto' (default) picks the fastest one that finds every match, 'search' searches for every barcode, 'exact' looks up exact barcodes before searching, 'neighbors' looks up the barcodes and their mismatches, and 'anchored' finds the enzymes first and looks up the barcodes before them. The run fails if the strategy cannot be used with the barcodes and options.");
+			System.out.println("'--demux-cache' - Specify the max number of read starts to remember the demultiplexing results of (default: 65536). Reads that start with the same bases as an earlier read get the same result without searching for the barcodes again. It is not used when the barcodes are looked up with indexes that find every match. Use 0 to not remember any.");
+			System.out.println("'--max-open-files' - Specify the max number of sample files that are open at the same time when demultiplexing (default: 512). This only matters if there are more sample files than the max. Then the least recently used files are closed and opened again later in append mode, so large sample sheets do not run out of file descriptors or memory. Use 0 to keep every sample file open.");
 			System.out.println("'-s' - Specify a sample info file that contains barcode information. This will enable demultiplexing.");
 			System.out.println("'-m' - Turn on merging paired end reads. Make sure there are two input files, one for forwards reads, and one for reversed reads.");
 			System.out.println("'-a' or '-A' or '-z' or '-Z' - Specify adapter sequences after to trim them as forwards 5', forwards 3', reversed 5' or reversed 3' adapters, respectively.");
@@ -2358,20 +3353,28 @@ public class FastQParseMain {
 				}else if(args[i].equals("-Q")){
 					qualityFilter = Double.parseDouble(args[++i]);
 				}else if(args[i].equals("-r")){
-					inputFileF = new File(args[++i]);
-					if(i + 1 < args.length && !args[i + 1].startsWith("-")){
-						inputFileR = new File(args[++i]);
+					inputFilesF = UtilMethods.toFiles(args[++i]);
+					inputFileF = inputFilesF[0];
+					stdinInput = args[i].equals("-");
+					if(i + 1 < args.length && (!args[i + 1].startsWith("-") || (stdinInput && args[i + 1].equals("-")))){
+						inputFilesR = UtilMethods.toFiles(args[++i]);
+						inputFileR = inputFilesR[0];
+						if(stdinInput != args[i].equals("-"))
+							throw new Exception("Forwards and reversed reads must both be files or both be stdin (interleaved)");
 					}
 				}else if(args[i].equals("-i")){
-					indexFileF = new File(args[++i]);
+					indexFilesF = UtilMethods.toFiles(args[++i]);
+					indexFileF = indexFilesF[0];
 					if(i + 1 < args.length && !args[i + 1].startsWith("-")){
-						indexFileR = new File(args[++i]);
+						indexFilesR = UtilMethods.toFiles(args[++i]);
+						indexFileR = indexFilesR[0];
 					}
 					randUMILength = 12;
 				}else if(args[i].equals("-s")){
 					sampleInfoFile = new File(args[++i]);
 				}else if(args[i].equals("-o")){
 					outputDir = args[++i];
+					stdoutOutput = outputDir.equals("-");
 					if(!outputDir.endsWith(File.separator) && !outputDir.endsWith("/") && !outputDir.endsWith("\\")){
 						outputDir += File.separator;
 					}
@@ -2484,10 +3487,40 @@ public class FastQParseMain {
 					removeNoAdapterReads = true;
 				}else if(args[i].equals("-tM")){
 					removeUnmergedReads = true;
+				}else if(args[i].equals("--gzip-index")){
+					gzipIndex = true;
+				}else if(args[i].equals("--follow")){
+					followInput = true;
+					if(i + 1 < args.length && !args[i + 1].startsWith("-")){
+						followIdleTimeout = (long)(Double.parseDouble(args[++i]) * 1000.0);
+					}
+				}else if(args[i].equals("--end-marker")){
+					followEndMarker = new File(args[++i]);
+				}else if(args[i].equals("--index-first")){
+					indexFirst = true;
+				}else if(args[i].equals("--alloc-budget")){
+					allocationBudget = new AllocationBudget();
+					while(i + 1 < args.length && !args[i + 1].startsWith("-")){ //either a max for every stage, or stage=max
+						String[] budget = args[++i].split("=");
+						if(budget.length == 1)
+							allocationBudget.setBudget(null, Double.parseDouble(budget[0]));
+						else
+							allocationBudget.setBudget(budget[0], Double.parseDouble(budget[1]));
+					}
+				}else if(args[i].equals("--demux-strategy")){
+					demuxStrategy = args[++i];
+					if(!Arrays.asList("auto", "search", "exact", "neighbors", "anchored").contains(demuxStrategy))
+						throw new Exception("Demultiplex strategy not supported: " + demuxStrategy);
+				}else if(args[i].equals("--demux-cache")){
+					demuxCacheSize = Integer.parseInt(args[++i]);
+				}else if(args[i].equals("--max-open-files")){
+					maxOpenFiles = Integer.parseInt(args[++i]);
 				}else if(args[i].equals("-P")){
 					parallel = true;
+					adaptiveBatchSize = true;
 					if(i + 1 < args.length && !args[i + 1].startsWith("-")){
 						splitBatchSize = Integer.parseInt(args[++i]);
+						adaptiveBatchSize = false;
 					}
 				}else if(args[i].equals("-pB")){
 					probB = 0.5;
@@ -2520,8 +3553,42 @@ public class FastQParseMain {
 					throw new Exception("Command not supported: " + args[i]);
 				}
 			}
+			if(stdinInput && indexFileF != null)
+				throw new Exception("Index files cannot be used when reading from stdin");
+			if(stdinInput && followInput)
+				throw new Exception("Stdin is already read as it is written, so it cannot be followed");
+			if((inputFilesR != null && inputFilesR.length != inputFilesF.length) || (indexFilesF != null && indexFilesF.length != inputFilesF.length) ||
+					(indexFilesR != null && indexFilesR.length != inputFilesF.length))
+				throw new Exception("Every lane needs the same number of read and index files");
+			if(stdoutOutput && sampleInfoFile != null)
+				throw new Exception("Demultiplexed reads cannot be written to stdout");
+			if(stdoutOutput && indexFileF != null)
+				throw new Exception("Index reads cannot be written to stdout");
+			if(stdoutOutput && (keepFirstDup || keepBestDup))
+				throw new Exception("Deduplicating is not supported when writing to stdout");
+			if(indexFirst){ //the reads are only routed, so nothing can change them or depend on them
+				if(indexFileF == null || sampleInfoFile == null)
+					throw new Exception("Index first demultiplexing needs index files and a sample info file");
+				if(stdinInput || stdoutOutput || followInput)
+					throw new Exception("Index first demultiplexing cannot be used with stdin, stdout, or followed input files");
+				if(mergePairedEnds || !adaptersF.isEmpty() || !adaptersR.isEmpty() || trimNPercent <= 1.0 || qualityTrimQScore1 != 0 || qualityTrimQScore2 != 0)
+					throw new Exception("Index first demultiplexing cannot be used when merging or trimming reads");
+				if(maxNPercent <= 1.0 || qualityFilter != 0.0 || filterAlgorithm || minLength != 0 || maxLength != Integer.MAX_VALUE ||
+						removeUntrimmedReads || removeNoAdapterReads || removeUnmergedReads)
+					throw new Exception("Index first demultiplexing cannot be used when filtering reads");
+				if(inputFileR != null && indexFileR == null && (removeBarRand || removeEnzyme))
+					throw new Exception("Index first demultiplexing cannot remove barcodes or enzymes from reversed reads without reversed index files");
+				if(allocationBudget != null)
+					throw new Exception("Allocated bytes cannot be measured in each stage when using index first demultiplexing");
+			}
+			
 			boolean isDirClear = false;
-			if(outputDir == null){
+			if(stdoutOutput){
+				outputDir = null;
+				console = new PrintStream(OutputStream.nullOutputStream()); //stdout is only for reads, and the log already goes to stderr
+			}else if(outputDir == null && stdinInput){
+				outputDir = "." + File.separator;
+			}else if(outputDir == null){
 				outputDir = inputFileF.getParent();
 				if(!outputDir.endsWith(File.separator) && !outputDir.endsWith("/") && !outputDir.endsWith("\\")){
 					outputDir += File.separator;
@@ -2535,21 +3602,39 @@ public class FastQParseMain {
 				if(!f.exists())
 					f.mkdirs();
 			}
-			File f2 = new File(outputDir + "temp" + File.separatorChar);
-			if(!f2.exists())
-				f2.mkdirs();
+			if(!stdoutOutput){
+				File f2 = new File(outputDir + "temp" + File.separatorChar);
+				if(!f2.exists())
+					f2.mkdirs();
+			}
 			if(saveDup && (keepBestDup || keepFirstDup)){
 				File f3 = new File(outputDir + "dup" + File.separatorChar);
 				if(!f3.exists())
 					f3.mkdirs();
 			}
-			if(inputFileF.getAbsolutePath().toLowerCase().endsWith(".gz") || inputFileF.getAbsolutePath().toLowerCase().endsWith(".gzip")){
+			if(stdinInput){ //check for the gzip magic number
+				stdin = new BufferedInputStream(System.in, BUFFER_SIZE_GZIP);
+				stdin.mark(2);
+				inputGZIP = stdin.read() == 0x1f && stdin.read() == 0x8b;
+				stdin.reset();
+			}else if(inputFileF.getAbsolutePath().toLowerCase().endsWith(".gz") || inputFileF.getAbsolutePath().toLowerCase().endsWith(".gzip")){
 				inputGZIP = true;
+				inputBGZF = BGZFInputStream.isBGZF(inputFileF);
+			}
+			for(int i = 1; i < inputFilesF.length; i++){ //all lanes must be compressed the same way
+				boolean gzipped = inputFilesF[i].getAbsolutePath().toLowerCase().endsWith(".gz") || inputFilesF[i].getAbsolutePath().toLowerCase().endsWith(".gzip");
+				if(gzipped != inputGZIP)
+					throw new Exception("Either all lanes or no lanes must be gzipped: " + inputFilesF[i].getAbsolutePath());
+				if(gzipped)
+					inputBGZF = inputBGZF && BGZFInputStream.isBGZF(inputFilesF[i]);
 			}
-			logWriter = new PrintWriter(new BufferedWriter(new FileWriter(outputDir + "FastQParse_" + Mode.PROCESS.description2 + ".log"), BUFFER_SIZE_LOG));
+			if(stdoutOutput)
+				logWriter = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.err), BUFFER_SIZE_LOG));
+			else
+				logWriter = new PrintWriter(new BufferedWriter(new FileWriter(outputDir + "FastQParse_" + Mode.PROCESS.description2 + ".log"), BUFFER_SIZE_LOG));
 			Date date = new Date();
 			logWriter.println("Started on: " + DATE_FORMAT.format(date));
-			System.out.println("Started on: " + DATE_FORMAT.format(date));
+			console.println("Started on: " + DATE_FORMAT.format(date));
 			if(isDirClear){
 				logWriter.println("Cleared Directory: " + outputDir);
 			}
@@ -2557,7 +3642,7 @@ public class FastQParseMain {
 			
 			date = new Date();
 			logWriter.println("Ended on: " + DATE_FORMAT.format(date));
-			System.out.println("Ended on: " + DATE_FORMAT.format(date));
+			console.println("Ended on: " + DATE_FORMAT.format(date));
 		}
 		if(logWriter != null){
 			logWriter.close();
@@ -0,0 +1,88 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+
+public class FastQPrefetcher{
+	//reads records from a FastQReader on its own thread and puts them in a bounded queue of batches
+	//each input file gets its own prefetcher, so the decompression and parsing of different files overlap
+	//batches are used so the threads do not need to synchronize for every record
+	private static final FastQRecord[] END = new FastQRecord[0];
+	
+	private FastQReader reader;
+	private ArrayBlockingQueue<FastQRecord[]> queue;
+	private Thread thread;
+	private volatile Throwable error = null;
+	private FastQRecord[] batch = null; //batch that is being handed out
+	private int batchPos = 0;
+	private volatile long allocatedBytes = 0L; //bytes allocated by the thread, once it has read every record
+	
+	public FastQPrefetcher(FastQReader reader, String name, int batchSize, int maxBatches){
+		this(reader, name, batchSize, maxBatches, false);
+	}
+	
+	//when following a file that is still being written, a batch is handed out early if the next record is not there yet
+	public FastQPrefetcher(FastQReader reader, String name, int batchSize, int maxBatches, boolean follow){
+		this.reader = reader;
+		this.queue = new ArrayBlockingQueue<FastQRecord[]>(maxBatches);
+		this.thread = new Thread(() -> {
+			long start = AllocationBudget.threadBytes();
+			try{
+				boolean done = false;
+				while(!done){
+					FastQRecord[] b = new FastQRecord[batchSize];
+					int n = 0;
+					while(n < batchSize && (n == 0 || !follow || reader.ready())){
+						if((b[n] = reader.next()) == null){
+							done = true;
+							break;
+						}
+						n++;
+					}
+					if(n > 0)
+						queue.put(n < batchSize ? Arrays.copyOf(b, n) : b);
+				}
+				allocatedBytes = AllocationBudget.threadBytes() - start;
+			}catch(InterruptedException e){
+				return;
+			}catch(Throwable e){
+				error = e;
+			}
+			try{
+				queue.put(END);
+			}catch(InterruptedException e){
+				return;
+			}
+		}, "FastQPrefetcher-" + name);
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+	
+	//returns null if there are no more records
+	public FastQRecord next() throws IOException{
+		if(batch == null || batchPos >= batch.length){
+			if(batch == END)
+				return null;
+			try{
+				batch = queue.take();
+			}catch(InterruptedException e){
+				throw new IOException(e);
+			}
+			batchPos = 0;
+			if(batch == END){
+				if(error != null)
+					throw new IOException(error);
+				return null;
+			}
+		}
+		return batch[batchPos++];
+	}
+	
+	public long allocatedBytes(){
+		return allocatedBytes;
+	}
+	
+	public void close() throws IOException{
+		thread.interrupt();
+		reader.close();
+	}
+}
@@ -0,0 +1,130 @@
+import java.io.IOException;
+import java.io.InputStream;
+
+public class FastQReader{
+	//parses .fastq records straight from the raw bytes of a (possibly decompressed) input stream
+	//lines are found by scanning for '\n' in large buffers, and each record is handed out as slices of the buffer
+	//a buffer is never reused after records are handed out from it, so records stay valid after the next call
+	private InputStream in;
+	private int bufferSize;
+	private byte[] buf;
+	private int pos = 0; //start of the data that has not been parsed
+	private int end = 0; //end of the valid data in buf
+	private boolean eof = false;
+	private boolean follow = false; //do not wait for a full buffer when the input is still being written
+	private long consumed = 0; //bytes of the stream that came before buf
+	private int s0, e0, s1, e1, s2, e2, s3, e3; //line boundaries of the last record found
+	
+	public FastQReader(InputStream in, int bufferSize){
+		this.in = in;
+		this.bufferSize = bufferSize;
+		this.buf = new byte[bufferSize];
+	}
+	
+	public FastQReader(InputStream in, int bufferSize, boolean follow){
+		this(in, bufferSize);
+		this.follow = follow;
+	}
+	
+	//returns null if there are no more complete records
+	public FastQRecord next() throws IOException{
+		if(!advance())
+			return null;
+		return new FastQRecord(slice(s0, e0), slice(s1, e1), slice(s3, e3));
+	}
+	
+	//moves past the next record without creating any slices, returns false if there are no more complete records
+	public boolean skip() throws IOException{
+		return advance();
+	}
+	
+	//whether the next record can be returned without waiting for more input
+	public boolean ready() throws IOException{
+		if(eof || in.available() > 0)
+			return true;
+		int i = pos;
+		for(int lines = 0; lines < 4; lines++){
+			while(i < end && buf[i] != '\n')
+				i++;
+			if(i++ >= end)
+				return false;
+		}
+		return true;
+	}
+	
+	//number of bytes of the input stream that have been consumed by the records returned so far
+	public long position(){
+		return consumed + pos;
+	}
+	
+	//finds the line boundaries of the next record and moves past it
+	private boolean advance() throws IOException{
+		while(true){
+			//skip empty lines between records
+			while(pos < end && (buf[pos] == '\n' || buf[pos] == '\r'))
+				pos++;
+			
+			s0 = pos;
+			e0 = lineEnd(s0);
+			s1 = e0 + 1;
+			e1 = e0 == -1 ? -1 : lineEnd(s1);
+			s2 = e1 + 1;
+			e2 = e1 == -1 ? -1 : lineEnd(s2);
+			s3 = e2 + 1;
+			e3 = e2 == -1 ? -1 : lineEnd(s3);
+			
+			if(e3 != -1){
+				pos = Math.min(e3 + 1, end);
+				return true;
+			}
+			
+			if(eof) //a partial record at the end of the file is ignored
+				return false;
+			fill();
+		}
+	}
+	
+	//index of the '\n' that ends the line starting at i, or -1 if more data is needed
+	private int lineEnd(int i){
+		for(int j = i; j < end; j++){
+			if(buf[j] == '\n')
+				return j;
+		}
+		if(eof && i < end) //last line does not need to end with '\n'
+			return end;
+		return -1;
+	}
+	
+	//removes the '\r' for files with Windows line endings
+	private ByteSlice slice(int s, int e){
+		if(e > s && buf[e - 1] == '\r')
+			e--;
+		return new ByteSlice(buf, s, e - s);
+	}
+	
+	//moves the unparsed data into a new buffer and reads more bytes after it
+	private void fill() throws IOException{
+		int remaining = end - pos;
+		consumed += pos;
+		byte[] next = new byte[Math.max(bufferSize, remaining * 2)];
+		System.arraycopy(buf, pos, next, 0, remaining);
+		buf = next;
+		pos = 0;
+		end = remaining;
+		
+		while(end < buf.length){
+			int n = in.read(buf, end, buf.length - end);
+			if(n == -1){
+				eof = true;
+				break;
+			}
+			end += n;
+			if(follow && in.available() == 0) //parse what is there instead of waiting for the rest of the buffer
+				break;
+		}
+	}
+	
+	public void close() throws IOException{
+		in.close();
+	}
+}
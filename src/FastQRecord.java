@@ -0,0 +1,72 @@
+
+public class FastQRecord{
+	//one record (4 lines) in a .fastq file
+	//the third line is not saved because it is always written as "+"
+	//trimming narrows the sequence and quality slices in place, and the untrimmed lines are remembered so they can be put back
+	public ByteSlice description; //includes the '@'
+	public ByteSlice sequence;
+	public ByteSlice quality;
+	
+	private byte[] sequenceArr, qualityArr;
+	private int sequenceOffset, sequenceLength, qualityOffset, qualityLength;
+	
+	//the sequence is encoded for searching the first time it is needed, and the views follow the trimming of the sequence
+	private PackedSequence encoded = null;
+	private boolean encodedUntrimmed = false;
+	private PackedSequence forwards, backwards;
+	
+	public FastQRecord(ByteSlice description, ByteSlice sequence, ByteSlice quality){
+		this.description = description;
+		this.sequence = sequence;
+		this.quality = quality;
+		this.sequenceArr = sequence.arr;
+		this.sequenceOffset = sequence.offset;
+		this.sequenceLength = sequence.length;
+		this.qualityArr = quality.arr;
+		this.qualityOffset = quality.offset;
+		this.qualityLength = quality.length;
+	}
+	
+	//keeps only the bases from start to end (exclusive) in both the sequence and the quality
+	public void trim(int start, int end){
+		sequence.narrow(start, end);
+		quality.narrow(start, end);
+	}
+	
+	//the encoding of the current sequence, which can be reversed and complemented
+	//only one forwards and one reversed/complemented view can be used at the same time
+	public PackedSequence packed(boolean reversed, boolean complemented){
+		if(encoded == null){
+			encoded = new PackedSequence();
+			forwards = new PackedSequence();
+			backwards = new PackedSequence();
+		}
+		int start;
+		if(sequence.arr == sequenceArr){
+			if(!encodedUntrimmed){
+				encoded.encode(sequenceArr, sequenceOffset, sequenceLength);
+				encodedUntrimmed = true;
+			}
+			start = sequence.offset - sequenceOffset;
+		}else{ //the sequence was replaced by a new array, so the encoding of the input cannot be used
+			encoded.encode(sequence.arr, sequence.offset, sequence.length);
+			encodedUntrimmed = false;
+			start = 0;
+		}
+		return (reversed || complemented ? backwards : forwards).view(encoded, start, sequence.length, reversed, complemented);
+	}
+	
+	public PackedSequence packed(){
+		return packed(false, false);
+	}
+	
+	//puts back the sequence and quality as they were read, even if they were replaced by new arrays
+	public void untrim(){
+		sequence.arr = sequenceArr;
+		sequence.offset = sequenceOffset;
+		sequence.length = sequenceLength;
+		quality.arr = qualityArr;
+		quality.offset = qualityOffset;
+		quality.length = qualityLength;
+	}
+}
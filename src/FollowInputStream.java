@@ -0,0 +1,65 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+public class FollowInputStream extends InputStream{
+	//reads a file that is still being written, like "tail -f"
+	//at the current end of the file, this waits for more data instead of returning -1
+	//the file is only treated as finished when the end marker file exists, or when no new data shows up for the idle timeout
+	private static final long POLL_INTERVAL = 500L; //milliseconds between checks for new data
+	
+	private FileInputStream in;
+	private File endMarker;
+	private long idleTimeout;
+	private boolean finished = false;
+	
+	public FollowInputStream(File file, File endMarker, long idleTimeout) throws IOException{
+		this.in = new FileInputStream(file);
+		this.endMarker = endMarker;
+		this.idleTimeout = idleTimeout;
+	}
+	
+	@Override
+	public int read() throws IOException{
+		byte[] b = new byte[1];
+		int n = read(b, 0, 1);
+		return n == -1 ? -1 : b[0] & 0xFF;
+	}
+	
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException{
+		if(len == 0)
+			return 0;
+		long idleStart = System.currentTimeMillis();
+		while(true){
+			int n = in.read(b, off, len);
+			if(n > 0)
+				return n;
+			if(finished)
+				return -1;
+			
+			//the marker is checked before reading one last time, so data written before the marker is not lost
+			if((endMarker != null && endMarker.exists()) || System.currentTimeMillis() - idleStart >= idleTimeout){
+				finished = true;
+				continue;
+			}
+			try{
+				Thread.sleep(POLL_INTERVAL);
+			}catch(InterruptedException e){
+				throw new IOException(e);
+			}
+		}
+	}
+	
+	//only counts the data that is already in the file, so readers can tell when they would need to wait
+	@Override
+	public int available() throws IOException{
+		return in.available();
+	}
+	
+	@Override
+	public void close() throws IOException{
+		in.close();
+	}
+}
@@ -0,0 +1,88 @@
+import java.util.ArrayList;
+
+public class FusedPattern{
+	//a sample's barcode joined with each of its enzymes, so each barcode match and the enzyme after it are found in one pass over the start of a read
+	//this is only for matching without insertions and deletions, where each part is compared base by base
+	//the max edits are split between the two parts, so the barcode and the enzyme each have their own max, like when they are searched for separately
+	//the barcode part is compared once at each place, and then each enzyme is compared right after it (or up to maxOffset bases after it), in order
+	//so the matches are the same as searching for the barcode, and then searching for the enzymes after every barcode match
+	private int barcodeLength;
+	private int[][] codes; //barcode then enzyme, for each of the sample's enzymes
+	
+	public FusedPattern(String barcode, ArrayList<String> enzymes){
+		barcodeLength = barcode.length();
+		codes = new int[enzymes.size()][];
+		for(int k = 0; k < enzymes.size(); k++){
+			String s = barcode + enzymes.get(k);
+			codes[k] = new int[s.length()];
+			for(int j = 0; j < s.length(); j++)
+				codes[k][j] = PackedSequence.code(s.charAt(j));
+		}
+	}
+	
+	public int barcodeLength(){
+		return barcodeLength;
+	}
+	
+	//finds the barcode matches that have one of the enzymes after them, in the order that searching for the barcode finds them
+	//the matches are added to matches, and the end (exclusive) of the first enzyme that matches after each one is added to enzymeEnds
+	//n is the length of the read, and returns the number of matches
+	public int scan(PackedSequence a, int n, int maxOffset, double edit, int minOverlap, boolean wildcard, ArrayList<Match> matches, int[] enzymeEnds){
+		if(codes.length == 0)
+			return 0;
+		minOverlap = Math.min(minOverlap, barcodeLength);
+		int e = Math.min(n, maxOffset + barcodeLength); //same end as searching for the barcode
+		int count = 0;
+		for(int x = minOverlap - 1; x < e; x++){ //the barcode ends at x, and can start before the read if the overlap is less than its length
+			int matchLength = Math.min(x + 1, barcodeLength);
+			int edits = edits(a, codes[0], 0, x - barcodeLength + 1, barcodeLength, UtilMethods.maxEdits(edit, matchLength), wildcard);
+			if(edits > UtilMethods.maxEdits(edit, matchLength))
+				continue;
+			for(int k = 0; k < codes.length; k++){
+				int enzymeEnd = enzymeEnd(a, k, x + 1, Math.min(n, maxOffset + x + 1 + codes[k].length - barcodeLength), edit, wildcard);
+				if(enzymeEnd != -1){
+					matches.add(new Match(x, edits, matchLength));
+					enzymeEnds[count++] = enzymeEnd;
+					break;
+				}
+			}
+		}
+		return count;
+	}
+	
+	//the max number of barcode matches that scan can find
+	public int maxMatches(int maxOffset){
+		return maxOffset + barcodeLength;
+	}
+	
+	//finds the enzyme with the fewest edits that starts between start and end, and returns the end (exclusive) of the first one
+	//returns -1 if there is no enzyme within the max edits
+	private int enzymeEnd(PackedSequence a, int k, int start, int end, double edit, boolean wildcard){
+		int length = codes[k].length - barcodeLength;
+		int max = UtilMethods.maxEdits(edit, length);
+		int best = -1;
+		for(int s = start; s + length <= end; s++){
+			int edits = edits(a, codes[k], barcodeLength, s, length, max, wildcard);
+			if(edits <= max){
+				best = s + length;
+				if(edits == 0)
+					break;
+				max = edits - 1; //only an enzyme with fewer edits can replace this one
+			}
+		}
+		return best;
+	}
+	
+	//the number of mismatches between part of a pattern and the read at start, or more than max if it is over max
+	//bases before the read match anything
+	private static int edits(PackedSequence a, int[] pattern, int offset, int start, int length, int max, boolean wildcard){
+		int edits = 0;
+		for(int j = Math.max(0, -start); j < length; j++){
+			int c = a.code(start + j);
+			int p = pattern[offset + j];
+			if(c != p && !(wildcard && (c == PackedSequence.N || p == PackedSequence.N)) && ++edits > max)
+				return edits;
+		}
+		return edits;
+	}
+}
@@ -0,0 +1,121 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+public class GzipIndex{
+	//access points for starting decompression in the middle of a single member gzip file
+	//every access point is at the start of a deflate block, and has the last 32KB of uncompressed data before it
+	//the index is stored next to the gzip file, and it is only used if the size and modification time of the gzip file are the same
+	private static final long MAGIC = 0x4651475A49445831L; //"FQGZIDX1"
+	private static final int BUFFER_SIZE = 65536;
+	
+	public long fileSize;
+	public long lastModified;
+	public long[] bitOffsets; //bit offset of each access point in the gzip file
+	public long[] outOffsets; //uncompressed offset of each access point
+	public byte[][] windows; //uncompressed data right before each access point
+	public long endBitOffset; //bit offset of the end of the deflate data
+	public long totalOut; //total uncompressed size
+	
+	public GzipIndex(long fileSize, long lastModified, long[] bitOffsets, long[] outOffsets, byte[][] windows, long endBitOffset, long totalOut){
+		this.fileSize = fileSize;
+		this.lastModified = lastModified;
+		this.bitOffsets = bitOffsets;
+		this.outOffsets = outOffsets;
+		this.windows = windows;
+		this.endBitOffset = endBitOffset;
+		this.totalOut = totalOut;
+	}
+	
+	public static File indexFile(File file){
+		return new File(file.getPath() + ".fqidx");
+	}
+	
+	//returns null if there is no index or if the gzip file changed after the index was built
+	public static GzipIndex load(File file) throws IOException{
+		File f = indexFile(file);
+		if(!f.exists())
+			return null;
+		
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f), BUFFER_SIZE))){
+			if(in.readLong() != MAGIC)
+				return null;
+			long fileSize = in.readLong();
+			long lastModified = in.readLong();
+			if(fileSize != file.length() || lastModified != file.lastModified())
+				return null;
+			long endBitOffset = in.readLong();
+			long totalOut = in.readLong();
+			int n = in.readInt();
+			long[] bitOffsets = new long[n];
+			long[] outOffsets = new long[n];
+			byte[][] windows = new byte[n][];
+			for(int i = 0; i < n; i++){
+				bitOffsets[i] = in.readLong();
+				outOffsets[i] = in.readLong();
+				byte[] compressed = new byte[in.readInt()];
+				windows[i] = new byte[in.readInt()];
+				in.readFully(compressed);
+				
+				Inflater inflater = new Inflater();
+				inflater.setInput(compressed);
+				try{
+					if(inflater.inflate(windows[i]) != windows[i].length)
+						throw new IOException("Corrupt gzip index: " + f.getAbsolutePath());
+				}catch(DataFormatException e){
+					throw new IOException("Corrupt gzip index: " + f.getAbsolutePath(), e);
+				}
+				inflater.end();
+			}
+			return new GzipIndex(fileSize, lastModified, bitOffsets, outOffsets, windows, endBitOffset, totalOut);
+		}
+	}
+	
+	//the index is written to a temporary file first, so a partially written index is never used
+	public void save(File file) throws IOException{
+		File f = indexFile(file);
+		File temp = new File(f.getPath() + ".tmp");
+		
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), BUFFER_SIZE))){
+			out.writeLong(MAGIC);
+			out.writeLong(fileSize);
+			out.writeLong(lastModified);
+			out.writeLong(endBitOffset);
+			out.writeLong(totalOut);
+			out.writeInt(bitOffsets.length);
+			byte[] buf = new byte[BUFFER_SIZE];
+			for(int i = 0; i < bitOffsets.length; i++){
+				out.writeLong(bitOffsets[i]);
+				out.writeLong(outOffsets[i]);
+				
+				Deflater deflater = new Deflater();
+				deflater.setInput(windows[i]);
+				deflater.finish();
+				int len = 0;
+				while(!deflater.finished()){
+					if(len == buf.length)
+						buf = Arrays.copyOf(buf, buf.length * 2);
+					len += deflater.deflate(buf, len, buf.length - len);
+				}
+				deflater.end();
+				
+				out.writeInt(len);
+				out.writeInt(windows[i].length);
+				out.write(buf, 0, len);
+			}
+		}
+		
+		Files.move(temp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+}
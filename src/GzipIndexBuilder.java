@@ -0,0 +1,383 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+public class GzipIndexBuilder extends InputStream{
+	//decompresses a gzip file with a pure Java inflater, because java.util.zip.Inflater does not give the bit offset of deflate blocks
+	//an access point is saved at the first deflate block after every span bytes of uncompressed data
+	//the index is saved when the end of the file is reached, but only if the file has a single gzip member
+	private static final int WINDOW_SIZE = 32768;
+	private static final int CHUNK_SIZE = 262144; //uncompressed bytes that are decompressed at once
+	private static final int MAX_MATCH = 258;
+	private static final int INPUT_SIZE = 65536;
+	
+	//the states of the inflater
+	private static final int HEADER = 0, BLOCK = 1, STORED = 2, HUFFMAN = 3, DONE = 4;
+	
+	//tables from the deflate format
+	private static final int[] LENGTH_BASE = {3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31, 35, 43, 51, 59, 67, 83, 99, 115, 131, 163, 195, 227, 258};
+	private static final int[] LENGTH_EXTRA = {0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0};
+	private static final int[] DIST_BASE = {1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193, 257, 385, 513, 769, 1025, 1537, 2049, 3073, 4097, 6145, 8193, 12289, 16385, 24577};
+	private static final int[] DIST_EXTRA = {0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6, 7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13};
+	private static final int[] CODE_LENGTH_ORDER = {16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15};
+	private static final int[] FIXED_LIT_TABLE;
+	private static final int[] FIXED_DIST_TABLE;
+	
+	static{
+		int[] lengths = new int[288];
+		Arrays.fill(lengths, 0, 144, 8);
+		Arrays.fill(lengths, 144, 256, 9);
+		Arrays.fill(lengths, 256, 280, 7);
+		Arrays.fill(lengths, 280, 288, 8);
+		int[] distLengths = new int[30];
+		Arrays.fill(distLengths, 5);
+		try{
+			FIXED_LIT_TABLE = buildTable(lengths, 288);
+			FIXED_DIST_TABLE = buildTable(distLengths, 30);
+		}catch(IOException e){
+			throw new RuntimeException(e);
+		}
+	}
+	
+	private InputStream in;
+	private File file;
+	private long span;
+	
+	private byte[] input = new byte[INPUT_SIZE];
+	private int inPos = 0;
+	private int inEnd = 0;
+	private long inBase = 0; //compressed bytes before input[0]
+	private boolean inputEOF = false;
+	private long bitBuf = 0;
+	private int bitCnt = 0;
+	
+	private byte[] out = new byte[WINDOW_SIZE + CHUNK_SIZE];
+	private int outPos = 0; //end of the decompressed data
+	private int readPos = 0; //start of the data that has not been read
+	private long outBase = 0; //uncompressed bytes before out[0]
+	
+	private int state = HEADER;
+	private boolean lastBlock = false;
+	private int storedLeft = 0;
+	private int[] litTable, distTable;
+	private CRC32 crc = new CRC32();
+	private int crcPos = 0;
+	private boolean multiMember = false;
+	
+	private ArrayList<Long> bitOffsets = new ArrayList<Long>();
+	private ArrayList<Long> outOffsets = new ArrayList<Long>();
+	private ArrayList<byte[]> windows = new ArrayList<byte[]>();
+	private long endBitOffset = -1;
+	
+	public GzipIndexBuilder(InputStream in, File file, long span){
+		this.in = in;
+		this.file = file;
+		this.span = span;
+	}
+	
+	@Override
+	public int read() throws IOException{
+		while(readPos == outPos){
+			if(state == DONE)
+				return -1;
+			decompress();
+		}
+		return out[readPos++] & 0xFF;
+	}
+	
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException{
+		if(len == 0)
+			return 0;
+		while(readPos == outPos){
+			if(state == DONE)
+				return -1;
+			decompress();
+		}
+		int n = Math.min(len, outPos - readPos);
+		System.arraycopy(out, readPos, b, off, n);
+		readPos += n;
+		return n;
+	}
+	
+	@Override
+	public void close() throws IOException{
+		in.close();
+	}
+	
+	//decompresses the next chunk, only called when all of the previous data has been read
+	private void decompress() throws IOException{
+		//keep the last 32KB for back references
+		if(outPos > WINDOW_SIZE){
+			int shift = outPos - WINDOW_SIZE;
+			System.arraycopy(out, shift, out, 0, WINDOW_SIZE);
+			outBase += shift;
+			outPos = WINDOW_SIZE;
+			readPos = WINDOW_SIZE;
+			crcPos = WINDOW_SIZE;
+		}
+		
+		int limit = out.length - MAX_MATCH;
+		while(outPos < limit && state != DONE){
+			if(state == HEADER){
+				readHeader();
+				lastBlock = false;
+				state = BLOCK;
+			}else if(state == BLOCK){
+				if(lastBlock)
+					endMember();
+				else
+					startBlock();
+			}else if(state == STORED){
+				int n = Math.min(storedLeft, limit - outPos);
+				for(int i = 0; i < n; i++)
+					out[outPos++] = (byte)bits(8);
+				storedLeft -= n;
+				if(storedLeft == 0)
+					state = BLOCK;
+			}else{
+				inflateBlock(limit);
+			}
+		}
+		
+		crc.update(out, crcPos, outPos - crcPos);
+		crcPos = outPos;
+	}
+	
+	private void readHeader() throws IOException{
+		if(bits(8) != 31 || bits(8) != 139 || bits(8) != 8)
+			throw new IOException("Not a gzip file: " + file.getAbsolutePath());
+		int flags = bits(8);
+		bits(32); //modification time
+		bits(16); //extra flags and operating system
+		if((flags & 4) != 0){
+			int len = bits(16);
+			for(int i = 0; i < len; i++)
+				bits(8);
+		}
+		if((flags & 8) != 0){ //file name
+			while(bits(8) != 0);
+		}
+		if((flags & 16) != 0){ //comment
+			while(bits(8) != 0);
+		}
+		if((flags & 2) != 0) //header CRC
+			bits(16);
+		crc.reset();
+	}
+	
+	//saves an access point if needed and reads the header of the next deflate block
+	private void startBlock() throws IOException{
+		long total = outBase + outPos;
+		if(!multiMember && (outOffsets.isEmpty() || total - outOffsets.get(outOffsets.size() - 1) >= span)){
+			bitOffsets.add(bitOffset());
+			outOffsets.add(total);
+			windows.add(Arrays.copyOfRange(out, Math.max(outPos - WINDOW_SIZE, 0), outPos));
+		}
+		
+		lastBlock = bits(1) == 1;
+		int type = bits(2);
+		if(type == 0){
+			bitBuf >>>= bitCnt & 7; //stored blocks start at a byte boundary
+			bitCnt -= bitCnt & 7;
+			int len = bits(16);
+			int nlen = bits(16);
+			if(len != (~nlen & 0xFFFF))
+				throw new IOException("Corrupt gzip file: " + file.getAbsolutePath());
+			storedLeft = len;
+			state = len == 0 ? BLOCK : STORED;
+		}else if(type == 1){
+			litTable = FIXED_LIT_TABLE;
+			distTable = FIXED_DIST_TABLE;
+			state = HUFFMAN;
+		}else if(type == 2){
+			readDynamicTables();
+			state = HUFFMAN;
+		}else{
+			throw new IOException("Corrupt gzip file: " + file.getAbsolutePath());
+		}
+	}
+	
+	private void readDynamicTables() throws IOException{
+		int hlit = bits(5) + 257;
+		int hdist = bits(5) + 1;
+		int hclen = bits(4) + 4;
+		int[] lengths = new int[19];
+		for(int i = 0; i < hclen; i++)
+			lengths[CODE_LENGTH_ORDER[i]] = bits(3);
+		int[] lengthTable = buildTable(lengths, 19);
+		
+		lengths = new int[hlit + hdist];
+		int i = 0;
+		while(i < lengths.length){
+			int sym = decodeSymbol(lengthTable);
+			if(sym < 16){
+				lengths[i++] = sym;
+				continue;
+			}
+			int prev = 0;
+			int repeat;
+			if(sym == 16){
+				if(i == 0)
+					throw new IOException("Corrupt gzip file: " + file.getAbsolutePath());
+				prev = lengths[i - 1];
+				repeat = 3 + bits(2);
+			}else if(sym == 17){
+				repeat = 3 + bits(3);
+			}else{
+				repeat = 11 + bits(7);
+			}
+			if(i + repeat > lengths.length)
+				throw new IOException("Corrupt gzip file: " + file.getAbsolutePath());
+			while(repeat-- > 0)
+				lengths[i++] = prev;
+		}
+		
+		litTable = buildTable(lengths, hlit);
+		distTable = buildTable(Arrays.copyOfRange(lengths, hlit, lengths.length), hdist);
+	}
+	
+	//decodes literals and matches until the end of the block or until the output chunk is full
+	private void inflateBlock(int limit) throws IOException{
+		while(outPos < limit){
+			int sym = decodeSymbol(litTable);
+			if(sym < 256){
+				out[outPos++] = (byte)sym;
+			}else if(sym == 256){
+				state = BLOCK;
+				return;
+			}else{
+				sym -= 257;
+				if(sym >= LENGTH_BASE.length)
+					throw new IOException("Corrupt gzip file: " + file.getAbsolutePath());
+				int len = LENGTH_BASE[sym] + bits(LENGTH_EXTRA[sym]);
+				int d = decodeSymbol(distTable);
+				if(d >= DIST_BASE.length)
+					throw new IOException("Corrupt gzip file: " + file.getAbsolutePath());
+				int dist = DIST_BASE[d] + bits(DIST_EXTRA[d]);
+				if(dist > outPos)
+					throw new IOException("Corrupt gzip file: " + file.getAbsolutePath());
+				for(int i = 0; i < len; i++){
+					out[outPos] = out[outPos - dist];
+					outPos++;
+				}
+			}
+		}
+	}
+	
+	//checks the CRC32 and size of a gzip member, and saves the index if this is the end of the file
+	private void endMember() throws IOException{
+		if(endBitOffset == -1)
+			endBitOffset = bitOffset();
+		bitBuf >>>= bitCnt & 7;
+		bitCnt -= bitCnt & 7;
+		
+		crc.update(out, crcPos, outPos - crcPos);
+		crcPos = outPos;
+		if((int)crc.getValue() != bits(32))
+			throw new IOException("CRC32 mismatch in gzip file: " + file.getAbsolutePath());
+		bits(32); //uncompressed size
+		
+		//trailing data that is not another gzip member is ignored
+		fillBits();
+		if(bitCnt >= 8 && (bitBuf & 0xFF) == 31){
+			multiMember = true;
+			state = HEADER;
+		}else{
+			state = DONE;
+			if(!multiMember){
+				long[] b = new long[bitOffsets.size()];
+				long[] o = new long[outOffsets.size()];
+				for(int i = 0; i < b.length; i++){
+					b[i] = bitOffsets.get(i);
+					o[i] = outOffsets.get(i);
+				}
+				new GzipIndex(file.length(), file.lastModified(), b, o, windows.toArray(new byte[windows.size()][]), endBitOffset, outBase + outPos).save(file);
+			}
+		}
+	}
+	
+	private long bitOffset(){
+		return (inBase + inPos) * 8 - bitCnt;
+	}
+	
+	//loads as many bytes as possible into the bit buffer
+	private void fillBits() throws IOException{
+		while(bitCnt <= 56){
+			if(inPos == inEnd){
+				if(inputEOF)
+					return;
+				inBase += inEnd;
+				inPos = 0;
+				inEnd = 0;
+				int n = in.read(input, 0, input.length);
+				if(n == -1){
+					inputEOF = true;
+					return;
+				}
+				inEnd = n;
+			}
+			bitBuf |= (long)(input[inPos++] & 0xFF) << bitCnt;
+			bitCnt += 8;
+		}
+	}
+	
+	private int bits(int n) throws IOException{
+		if(bitCnt < n){
+			fillBits();
+			if(bitCnt < n)
+				throw new IOException("Unexpected end of gzip file: " + file.getAbsolutePath());
+		}
+		int res = (int)(bitBuf & ((1L << n) - 1));
+		bitBuf >>>= n;
+		bitCnt -= n;
+		return res;
+	}
+	
+	//each table entry is the symbol shifted left by 4 bits, and the code length in the lowest 4 bits
+	private int decodeSymbol(int[] table) throws IOException{
+		if(bitCnt < 15)
+			fillBits();
+		int e = table[(int)bitBuf & (table.length - 1)];
+		int len = e & 15;
+		if(len == 0 || len > bitCnt)
+			throw new IOException("Corrupt gzip file: " + file.getAbsolutePath());
+		bitBuf >>>= len;
+		bitCnt -= len;
+		return e >>> 4;
+	}
+	
+	//builds a lookup table that is indexed by the next bits of the input for canonical Huffman codes
+	private static int[] buildTable(int[] lengths, int n) throws IOException{
+		int maxLen = 1;
+		int[] count = new int[16];
+		for(int i = 0; i < n; i++){
+			maxLen = Math.max(maxLen, lengths[i]);
+			count[lengths[i]]++;
+		}
+		count[0] = 0;
+		
+		int[] next = new int[16];
+		int code = 0;
+		for(int len = 1; len < 16; len++){
+			code = (code + count[len - 1]) << 1;
+			next[len] = code;
+			if(next[len] + count[len] > (1 << len))
+				throw new IOException("Corrupt gzip file: Huffman code is over-subscribed");
+		}
+		
+		int[] table = new int[1 << maxLen];
+		for(int sym = 0; sym < n; sym++){
+			int len = lengths[sym];
+			if(len == 0)
+				continue;
+			int rev = Integer.reverse(next[len]++) >>> (32 - len);
+			for(int i = rev; i < table.length; i += 1 << len)
+				table[i] = (sym << 4) | len;
+		}
+		return table;
+	}
+}
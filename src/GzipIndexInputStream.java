@@ -0,0 +1,165 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+public class GzipIndexInputStream extends InputStream{
+	//decompresses a single member gzip file in parallel by starting the inflater at the access points of a GzipIndex
+	//each segment between two access points is inflated on a thread pool, with the saved window as the dictionary
+	//the segments are returned in order, the same way as BGZFInputStream
+	private FileChannel channel;
+	private GzipIndex index;
+	private ExecutorService pool;
+	private int maxPending; //max number of segments that are being inflated at once
+	private int nextSegment = 0;
+	private ArrayDeque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+	private byte[] block = new byte[0]; //current decompressed segment
+	private int blockPos = 0;
+	
+	public GzipIndexInputStream(File file, GzipIndex index, ExecutorService pool, int maxPending) throws IOException{
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		this.index = index;
+		this.pool = pool;
+		this.maxPending = maxPending;
+	}
+	
+	@Override
+	public int read() throws IOException{
+		while(blockPos >= block.length){
+			if(!nextBlock())
+				return -1;
+		}
+		return block[blockPos++] & 0xFF;
+	}
+	
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException{
+		if(len == 0)
+			return 0;
+		while(blockPos >= block.length){
+			if(!nextBlock())
+				return -1;
+		}
+		int n = Math.min(len, block.length - blockPos);
+		System.arraycopy(block, blockPos, b, off, n);
+		blockPos += n;
+		return n;
+	}
+	
+	@Override
+	public void close() throws IOException{
+		for(Future<byte[]> f : pending)
+			f.cancel(false);
+		pending.clear();
+		channel.close();
+	}
+	
+	private boolean nextBlock() throws IOException{
+		while(nextSegment < index.bitOffsets.length && pending.size() < maxPending){
+			int segment = nextSegment++;
+			pending.add(pool.submit(() -> inflate(segment)));
+		}
+		if(pending.isEmpty())
+			return false;
+		
+		try{
+			block = pending.poll().get();
+		}catch(ExecutionException e){
+			throw new IOException(e.getCause());
+		}catch(InterruptedException e){
+			throw new IOException(e);
+		}
+		blockPos = 0;
+		return true;
+	}
+	
+	//packs empty non-final deflate blocks into a number of bits that is equal to shift mod 8
+	//an empty fixed Huffman block is 10 bits, and the empty dynamic Huffman block below is 95 bits
+	private static byte[] emptyBlocks(int shift){
+		byte[] res = new byte[16];
+		int pos = 0;
+		int fixedBlocks = shift / 2;
+		if(shift % 2 == 1){
+			pos = writeBits(res, pos, 0, 1); //not the last block
+			pos = writeBits(res, pos, 2, 2); //dynamic Huffman codes
+			pos = writeBits(res, pos, 0, 5); //257 literal/length codes
+			pos = writeBits(res, pos, 0, 5); //1 distance code
+			pos = writeBits(res, pos, 15, 4); //19 code length codes
+			//code length code lengths in the order 16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15
+			//18 gets the code 0, 0 gets the code 10, and 1 gets the code 11
+			int[] lengths = {0, 0, 1, 2, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 2, 0};
+			for(int i = 0; i < lengths.length; i++)
+				pos = writeBits(res, pos, lengths[i], 3);
+			pos = writeBits(res, pos, 0, 1); //138 zeros
+			pos = writeBits(res, pos, 127, 7);
+			pos = writeBits(res, pos, 0, 1); //118 zeros
+			pos = writeBits(res, pos, 107, 7);
+			pos = writeBits(res, pos, 3, 2); //end of block gets a code length of 1
+			pos = writeBits(res, pos, 1, 2); //no distance codes
+			pos = writeBits(res, pos, 0, 1); //end of block
+			fixedBlocks = ((shift - pos) % 8 + 8) % 8 / 2;
+		}
+		for(int i = 0; i < fixedBlocks; i++){
+			pos = writeBits(res, pos, 0, 1); //not the last block
+			pos = writeBits(res, pos, 1, 2); //fixed Huffman codes
+			pos = writeBits(res, pos, 0, 7); //end of block
+		}
+		return Arrays.copyOf(res, (pos + 7) / 8);
+	}
+	
+	private static int writeBits(byte[] b, int pos, int value, int n){
+		for(int i = 0; i < n; i++, pos++){
+			if(((value >>> i) & 1) != 0)
+				b[pos / 8] |= 1 << (pos % 8);
+		}
+		return pos;
+	}
+	
+	//inflates the data between two access points
+	private byte[] inflate(int segment) throws IOException, DataFormatException{
+		long startBit = index.bitOffsets[segment];
+		long endBit = segment + 1 < index.bitOffsets.length ? index.bitOffsets[segment + 1] : index.endBitOffset;
+		long size = (segment + 1 < index.outOffsets.length ? index.outOffsets[segment + 1] : index.totalOut) - index.outOffsets[segment];
+		if(size > Integer.MAX_VALUE)
+			throw new IOException("Segment of gzip file is too large: " + size + " bytes");
+		
+		//java.util.zip.Inflater can only start at a byte boundary, so if the access point is in the middle of a byte,
+		//then empty deflate blocks are put in front of it to take up the bits of that byte before the access point
+		int shift = (int)(startBit % 8);
+		byte[] prefix = emptyBlocks(shift);
+		int prefixBytes = prefix.length - (shift == 0 ? 0 : 1);
+		long start = startBit / 8;
+		byte[] compressed = new byte[prefixBytes + (int)((endBit + 7) / 8 - start) + 1];
+		ByteBuffer buf = ByteBuffer.wrap(compressed, prefixBytes, compressed.length - prefixBytes);
+		while(buf.hasRemaining() && channel.read(buf, start + buf.position() - prefixBytes) != -1);
+		System.arraycopy(prefix, 0, compressed, 0, prefixBytes);
+		if(shift != 0)
+			compressed[prefixBytes] = (byte)((prefix[prefixBytes] & ((1 << shift) - 1)) | (compressed[prefixBytes] & (0xFF << shift)));
+		
+		byte[] res = new byte[(int)size];
+		Inflater inflater = new Inflater(true);
+		if(index.windows[segment].length > 0)
+			inflater.setDictionary(index.windows[segment]);
+		inflater.setInput(compressed);
+		int n = 0;
+		while(n < res.length && !inflater.finished()){
+			int r = inflater.inflate(res, n, res.length - n);
+			if(r == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+				break;
+			n += r;
+		}
+		inflater.end();
+		if(n != res.length)
+			throw new IOException("Gzip index does not match the gzip file");
+		return res;
+	}
+}
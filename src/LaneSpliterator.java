@@ -0,0 +1,86 @@
+import java.util.ArrayList;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+public class LaneSpliterator<T> implements Spliterator<T>{
+	//combines the spliterators of several lanes, and sets the lane of each Read that passes through
+	//when splitting, whole lanes are given away first, so different threads work on different lanes at the same time
+	//after that, the lane's own spliterator is split
+	private ArrayList<Spliterator<T>> lanes;
+	private int[] laneIndexes;
+	private int curr, end;
+	
+	//LaneSpliterator's type needs to be Read, just like ReadSpliterator
+	public LaneSpliterator(ArrayList<Spliterator<T>> lanes){
+		this(new ArrayList<Spliterator<T>>(lanes), new int[lanes.size()], 0, lanes.size());
+		for(int i = 0; i < laneIndexes.length; i++)
+			laneIndexes[i] = i;
+	}
+	
+	private LaneSpliterator(ArrayList<Spliterator<T>> lanes, int[] laneIndexes, int curr, int end){
+		this.lanes = lanes;
+		this.laneIndexes = laneIndexes;
+		this.curr = curr;
+		this.end = end;
+	}
+	
+	@Override
+	public int characteristics(){
+		return NONNULL | CONCURRENT | IMMUTABLE;
+	}
+	
+	@Override
+	public long estimateSize(){
+		long size = 0;
+		for(int i = curr; i < end; i++){
+			size += lanes.get(i).estimateSize();
+			if(size < 0)
+				return Long.MAX_VALUE;
+		}
+		return size;
+	}
+	
+	@Override
+	public boolean tryAdvance(Consumer<? super T> c){
+		while(curr < end){
+			int lane = laneIndexes[curr];
+			if(lanes.get(curr).tryAdvance((read) -> {
+				((Read)read).lane = lane;
+				c.accept(read);
+			})){
+				return true;
+			}
+			curr++;
+		}
+		return false;
+	}
+	
+	@Override
+	public void forEachRemaining(Consumer<? super T> c){
+		for(; curr < end; curr++){
+			int lane = laneIndexes[curr];
+			lanes.get(curr).forEachRemaining((read) -> {
+				((Read)read).lane = lane;
+				c.accept(read);
+			});
+		}
+	}
+	
+	@Override
+	public Spliterator<T> trySplit(){
+		if(end - curr > 1){
+			int mid = (curr + end) >>> 1;
+			LaneSpliterator<T> res = new LaneSpliterator<T>(lanes, laneIndexes, curr, mid);
+			curr = mid;
+			return res;
+		}
+		if(curr >= end)
+			return null;
+		Spliterator<T> split = lanes.get(curr).trySplit();
+		if(split == null)
+			return null;
+		ArrayList<Spliterator<T>> splitLanes = new ArrayList<Spliterator<T>>();
+		splitLanes.add(split);
+		return new LaneSpliterator<T>(splitLanes, new int[]{laneIndexes[curr]}, 0, 1);
+	}
+}
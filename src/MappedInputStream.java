@@ -0,0 +1,34 @@
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+public class MappedInputStream extends InputStream{
+	//reads the bytes of a (memory mapped) ByteBuffer, so the regions of a mapped file can be fed to FastQReader
+	private ByteBuffer buf;
+	
+	public MappedInputStream(ByteBuffer buf){
+		this.buf = buf;
+	}
+	
+	@Override
+	public int read(){
+		if(!buf.hasRemaining())
+			return -1;
+		return buf.get() & 0xFF;
+	}
+	
+	@Override
+	public int read(byte[] b, int off, int len){
+		if(len == 0)
+			return 0;
+		if(!buf.hasRemaining())
+			return -1;
+		int n = Math.min(len, buf.remaining());
+		buf.get(b, off, n);
+		return n;
+	}
+	
+	@Override
+	public int available(){
+		return buf.remaining();
+	}
+}
@@ -0,0 +1,279 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+public class MappedReadSpliterator<T> implements Spliterator<T>{
+	//splits uncompressed .fastq files into byte ranges that start and end on record boundaries
+	//each range is memory mapped and parsed by the thread that processes it, so reading is not limited to one thread
+	//the reversed and index files are split in lockstep, so the n-th record of every file is always in the same range
+	private static final long MIN_CHUNK_SIZE = 1048576; //bounds for the size of each range of the forwards file
+	private static final long MAX_CHUNK_SIZE = 67108864;
+	private static final int CHUNKS_PER_THREAD = 16;
+	private static final int RESYNC_WINDOW = 65536; //initial number of bytes read when looking for a record start
+	private static final int BUFFER_SIZE_COUNT = 1048576; //buffer size when counting records
+	
+	private FileChannel[] channels; //forwards, reversed, forwards index, and reversed index (null if not used)
+	private long[][] offsets; //start of every range in each file, with an extra entry for the end of the last range
+	private int bufferSize;
+	private int lo, hi; //ranges in [lo, hi) have not been started
+	private FastQReader[] readers = null; //readers for the range that is being parsed
+	
+	//MappedReadSpliterator's type needs to be Read, or else bad stuff will happen
+	public MappedReadSpliterator(int bufferSize, File fileF, File fileR, File fileIF, File fileIR) throws IOException{
+		this.bufferSize = bufferSize;
+		File[] files = {fileF, fileR, fileIF, fileIR};
+		channels = new FileChannel[files.length];
+		for(int i = 0; i < files.length; i++){
+			if(files[i] != null)
+				channels[i] = FileChannel.open(files[i].toPath(), StandardOpenOption.READ);
+		}
+		
+		int threads = ForkJoinPool.getCommonPoolParallelism();
+		long[][] starts = new long[files.length][];
+		for(int i = 0; i < files.length; i++){
+			if(channels[i] != null)
+				starts[i] = chunkStarts(channels[i], threads);
+		}
+		
+		if(channels[1] == null && channels[2] == null && channels[3] == null){
+			//only one file, so the record starts can be used directly
+			offsets = new long[][]{starts[0], null, null, null};
+		}else{
+			//count the records in each chunk of each file so records can be matched up between files
+			long[][] ordinals = new long[files.length][];
+			long total = Long.MAX_VALUE;
+			for(int i = 0; i < files.length; i++){
+				if(channels[i] != null){
+					ordinals[i] = chunkOrdinals(channels[i], starts[i]);
+					total = Math.min(total, ordinals[i][ordinals[i].length - 1]);
+				}
+			}
+			
+			//the ranges are split at the record ordinals of the forwards file chunks
+			final long t = total;
+			long[] split = Arrays.stream(ordinals[0]).map(o -> Math.min(o, t)).distinct().toArray();
+			
+			offsets = new long[files.length][];
+			for(int i = 0; i < files.length; i++){
+				if(channels[i] != null){
+					final int f = i;
+					offsets[i] = new long[split.length];
+					IntStream.range(0, split.length).parallel().forEach((j) -> {
+						try{
+							offsets[f][j] = locate(channels[f], starts[f], ordinals[f], split[j]);
+						}catch(Exception e){
+							UtilMethods.defaultExceptionHandler(null, e);
+						}
+					});
+				}
+			}
+		}
+		
+		this.lo = 0;
+		this.hi = offsets[0].length - 1;
+	}
+	
+	private MappedReadSpliterator(FileChannel[] channels, long[][] offsets, int bufferSize, int lo, int hi){
+		this.channels = channels;
+		this.offsets = offsets;
+		this.bufferSize = bufferSize;
+		this.lo = lo;
+		this.hi = hi;
+	}
+	
+	@Override
+	public int characteristics(){
+		return NONNULL | CONCURRENT | IMMUTABLE;
+	}
+	
+	@Override
+	public long estimateSize(){
+		//number of bytes in the forwards file that have not been started
+		return offsets[0][hi] - offsets[0][lo];
+	}
+	
+	@SuppressWarnings("unchecked")
+	@Override
+	public boolean tryAdvance(Consumer<? super T> c){
+		FastQRecord[] next = new FastQRecord[channels.length];
+		
+		try{
+			while(true){
+				if(readers == null){
+					if(lo >= hi)
+						return false;
+					readers = openRange(lo++);
+				}
+				
+				boolean done = false;
+				for(int i = 0; i < readers.length; i++){
+					if(readers[i] != null){
+						next[i] = readers[i].next();
+						if(next[i] == null)
+							done = true;
+					}
+				}
+				if(!done)
+					break;
+				readers = null;
+			}
+		}catch(Exception e){
+			UtilMethods.defaultExceptionHandler(null, e);
+		}
+		
+		c.accept((T)new Read(next[0], next[1], next[2], next[3]));
+		return true;
+	}
+	
+	@Override
+	public Spliterator<T> trySplit(){
+		//only ranges that have not been started are given away
+		if(hi - lo < 2)
+			return null;
+		int mid = lo + (hi - lo) / 2;
+		MappedReadSpliterator<T> s = new MappedReadSpliterator<T>(channels, offsets, bufferSize, lo, mid);
+		lo = mid;
+		return s;
+	}
+	
+	public void close() throws IOException{
+		for(int i = 0; i < channels.length; i++){
+			if(channels[i] != null)
+				channels[i].close();
+		}
+	}
+	
+	//maps a range of every file and creates a reader for each one
+	private FastQReader[] openRange(int range) throws IOException{
+		FastQReader[] res = new FastQReader[channels.length];
+		for(int i = 0; i < channels.length; i++){
+			if(channels[i] != null)
+				res[i] = mapRegion(channels[i], offsets[i][range], offsets[i][range + 1], bufferSize);
+		}
+		return res;
+	}
+	
+	private static FastQReader mapRegion(FileChannel channel, long start, long end, int bufferSize) throws IOException{
+		if(end - start > Integer.MAX_VALUE)
+			throw new IOException("Region of input file is too large to be memory mapped: " + (end - start) + " bytes");
+		ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+		return new FastQReader(new MappedInputStream(buf), (int)Math.max(Math.min(bufferSize, end - start), 1));
+	}
+	
+	//splits a file into chunks and moves the start of each chunk to the start of a record
+	//the last element is the size of the file
+	private static long[] chunkStarts(FileChannel channel, int threads) throws IOException{
+		long size = channel.size();
+		long chunkSize = Math.min(MAX_CHUNK_SIZE, Math.max(MIN_CHUNK_SIZE, size / ((long)threads * CHUNKS_PER_THREAD)));
+		int chunks = (int)Math.max((size + chunkSize - 1) / chunkSize, 1);
+		
+		long[] res = new long[chunks + 1];
+		IntStream.range(1, chunks).parallel().forEach((i) -> {
+			try{
+				res[i] = resync(channel, size, i * chunkSize);
+			}catch(Exception e){
+				UtilMethods.defaultExceptionHandler(null, e);
+			}
+		});
+		res[chunks] = size;
+		
+		//large records can cause multiple chunks to start at the same record
+		return Arrays.stream(res).distinct().toArray();
+	}
+	
+	//the number of records before the start of each chunk
+	private static long[] chunkOrdinals(FileChannel channel, long[] starts){
+		long[] res = new long[starts.length];
+		IntStream.range(0, starts.length - 1).parallel().forEach((i) -> {
+			try{
+				FastQReader reader = mapRegion(channel, starts[i], starts[i + 1], BUFFER_SIZE_COUNT);
+				long count = 0;
+				while(reader.skip())
+					count++;
+				res[i + 1] = count;
+			}catch(Exception e){
+				UtilMethods.defaultExceptionHandler(null, e);
+			}
+		});
+		for(int i = 1; i < res.length; i++){
+			res[i] += res[i - 1];
+		}
+		return res;
+	}
+	
+	//the byte offset of the record with a certain ordinal
+	private static long locate(FileChannel channel, long[] starts, long[] ordinals, long ordinal) throws IOException{
+		if(ordinal >= ordinals[ordinals.length - 1])
+			return starts[starts.length - 1];
+		int c = Arrays.binarySearch(ordinals, ordinal);
+		if(c >= 0){
+			//find the last chunk that starts with this ordinal in case there are empty chunks
+			while(c + 1 < ordinals.length - 1 && ordinals[c + 1] == ordinal)
+				c++;
+			return starts[c];
+		}
+		c = -c - 2; //chunk that contains the ordinal
+		FastQReader reader = mapRegion(channel, starts[c], starts[c + 1], BUFFER_SIZE_COUNT);
+		for(long i = ordinals[c]; i < ordinal; i++){
+			reader.skip();
+		}
+		return starts[c] + reader.position();
+	}
+	
+	//finds the start of the first record at or after p
+	//a record start is a line that begins with '@', where the line two lines after it begins with '+'
+	//and the sequence and quality lines have the same length, since quality lines can also begin with '@'
+	private static long resync(FileChannel channel, long size, long p) throws IOException{
+		if(p >= size)
+			return size;
+		long start = p - 1; //include the byte before p in case p is already the start of a line
+		int window = RESYNC_WINDOW;
+		
+		while(true){
+			int len = (int)Math.min(window, size - start);
+			boolean eof = start + len == size;
+			byte[] b = new byte[len];
+			ByteBuffer buf = ByteBuffer.wrap(b);
+			while(buf.hasRemaining() && channel.read(buf, start + buf.position()) != -1);
+			
+			int i = lineEnd(b, 0, eof);
+			boolean more = i == -1; //need a larger window
+			while(!more && ++i < len){
+				int e0 = lineEnd(b, i, eof);
+				int e1 = e0 == -1 ? -1 : lineEnd(b, e0 + 1, eof);
+				int e2 = e1 == -1 ? -1 : lineEnd(b, e1 + 1, eof);
+				int e3 = e2 == -1 ? -1 : lineEnd(b, e2 + 1, eof);
+				if(e3 == -1){
+					more = true;
+				}else if(b[i] == '@' && e1 + 1 < e2 && b[e1 + 1] == '+' && lineLength(b, e0 + 1, e1) == lineLength(b, e2 + 1, e3)){
+					return start + i;
+				}else{
+					i = e0;
+				}
+			}
+			
+			if(eof)
+				return size;
+			window *= 2;
+		}
+	}
+	
+	private static int lineEnd(byte[] b, int i, boolean eof){
+		for(int j = i; j < b.length; j++){
+			if(b[j] == '\n')
+				return j;
+		}
+		return eof && i < b.length ? b.length : -1;
+	}
+	
+	private static int lineLength(byte[] b, int s, int e){
+		return e > s && b[e - 1] == '\r' ? e - s - 1 : e - s;
+	}
+}
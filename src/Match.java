@@ -1,4 +1,6 @@
 
+import java.util.ArrayList;
+
 public class Match{
 	public int end, edits, length;
 	
@@ -9,6 +11,12 @@ public class Match{
 		this.length = length;
 	}
 	
+	//arrays of a generic type cannot be made directly, so this is the one place that the arrays of match lists are made
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public static ArrayList<Match>[] lists(int n){
+		return new ArrayList[n];
+	}
+	
 	@Override
 	public String toString(){
 		return "End Index: " + end + "; Edits: " + edits + "; Length: " + length;
@@ -0,0 +1,194 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class OutputPool{
+	//limits how many sample files are open at the same time, since every open file has a file descriptor, buffers, and a deflater when gzipped
+	//each file gets a small staging buffer that the records are written to, and the file is only opened when the staging buffer is full or flushed
+	//when too many files are open, the least recently used ones are closed, and they are opened again in append mode when they need to be written to
+	//a gzipped file that is opened again gets a new gzip member, which is still read as one file by gzip readers
+	//files that are being written to by other threads are not closed, so a few more files than the max can be open for a short time
+	public static final int STAGE_SIZE = 4096;
+	
+	public interface Opener{
+		//opens the file, appending to it if it was opened before
+		OutputStream open(boolean append) throws IOException;
+	}
+	
+	private int maxOpen;
+	private LinkedHashMap<PooledStream, Boolean> open = new LinkedHashMap<PooledStream, Boolean>(16, 0.75f, true); //least recently used first
+	private int maxOpenSeen = 0;
+	private LongAdder opens = new LongAdder();
+	private LongAdder reopens = new LongAdder();
+	private LongAdder evictions = new LongAdder();
+	
+	public OutputPool(int maxOpen){
+		this.maxOpen = Math.max(1, maxOpen);
+	}
+	
+	public int maxOpen(){
+		return maxOpen;
+	}
+	
+	//the file is not opened until something needs to be written to it
+	public OutputStream stream(Opener opener){
+		return new PooledStream(opener);
+	}
+	
+	//adds a file that is about to be opened, and closes the least recently used files that are not being written to, if there are too many
+	private void reserve(PooledStream s) throws IOException{
+		ArrayList<PooledStream> evicted = new ArrayList<PooledStream>();
+		synchronized(this){
+			open.put(s, Boolean.TRUE);
+			Iterator<PooledStream> it = open.keySet().iterator();
+			for(int excess = open.size() - maxOpen; excess > 0 && it.hasNext();){
+				PooledStream e = it.next();
+				if(e != s && e.lock.tryLock()){ //never waits for another file's lock, so two threads cannot wait for each other
+					it.remove();
+					evicted.add(e);
+					excess--;
+				}
+			}
+			maxOpenSeen = Math.max(maxOpenSeen, open.size());
+		}
+		for(PooledStream e : evicted){
+			try{
+				e.evict();
+			}finally{
+				e.lock.unlock();
+			}
+		}
+	}
+	
+	private synchronized void used(PooledStream s){
+		open.get(s);
+	}
+	
+	private synchronized void release(PooledStream s){
+		open.remove(s);
+	}
+	
+	public void print(PrintWriter logWriter, DecimalFormat format){
+		int max;
+		synchronized(this){
+			max = maxOpenSeen;
+		}
+		logWriter.println("Max Output Files Open At Once: " + max + " (Limit: " + maxOpen + ")");
+		logWriter.println("Output Files Opened: " + format.format(opens.sum()));
+		logWriter.println("Output Files Reopened: " + format.format(reopens.sum()));
+		logWriter.println("Output Files Closed Early: " + format.format(evictions.sum()));
+	}
+	
+	private class PooledStream extends OutputStream{
+		private Opener opener;
+		private ReentrantLock lock = new ReentrantLock();
+		private OutputStream out = null; //null if the file is not open right now
+		private byte[] stage = null; //only made when the first byte is written
+		private int staged = 0;
+		private boolean created = false; //was the file opened before, so it is appended to
+		
+		PooledStream(Opener opener){
+			this.opener = opener;
+		}
+		
+		@Override
+		public void write(int b) throws IOException{
+			lock.lock();
+			try{
+				if(stage == null)
+					stage = new byte[STAGE_SIZE];
+				if(staged == stage.length)
+					drain();
+				stage[staged++] = (byte)b;
+			}finally{
+				lock.unlock();
+			}
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException{
+			lock.lock();
+			try{
+				if(stage == null)
+					stage = new byte[STAGE_SIZE];
+				while(len > 0){
+					if(staged == stage.length)
+						drain();
+					int n = Math.min(len, stage.length - staged);
+					System.arraycopy(b, off, stage, staged, n);
+					staged += n;
+					off += n;
+					len -= n;
+				}
+			}finally{
+				lock.unlock();
+			}
+		}
+		
+		@Override
+		public void flush() throws IOException{
+			lock.lock();
+			try{
+				drain();
+				if(out != null)
+					out.flush();
+			}finally{
+				lock.unlock();
+			}
+		}
+		
+		@Override
+		public void close() throws IOException{
+			lock.lock();
+			try{
+				if(!created && out == null) //the file is always made, even if nothing was written to it
+					openFile();
+				drain();
+				if(out != null){
+					out.close();
+					out = null;
+					release(this);
+				}
+				stage = null;
+			}finally{
+				lock.unlock();
+			}
+		}
+		
+		//writes the staged bytes to the file, opening it if it was closed
+		private void drain() throws IOException{
+			if(staged == 0)
+				return;
+			if(out == null)
+				openFile();
+			else
+				used(this);
+			out.write(stage, 0, staged);
+			staged = 0;
+		}
+		
+		private void openFile() throws IOException{
+			reserve(this);
+			out = opener.open(created);
+			opens.increment();
+			if(created)
+				reopens.increment();
+			created = true;
+		}
+		
+		//only called by the pool while holding the lock, after it is removed from the open files
+		private void evict() throws IOException{
+			if(out != null){
+				out.close();
+				out = null;
+				evictions.increment();
+			}
+		}
+	}
+}
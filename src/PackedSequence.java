@@ -0,0 +1,76 @@
+import java.util.Arrays;
+
+public class PackedSequence{
+	//a DNA sequence encoded once into 2 bits per base (32 bases per long), with a separate mask for 'N'
+	//the searches get the code of each base straight from the encoding, instead of uppercasing and looking up every character for every pattern
+	//a view can cover part of the encoding, and can be reversed and complemented without encoding again
+	public static final int A = 0, C = 1, G = 2, T = 3, N = 4; //complement of a code is 3 - code
+	public static final int CODES = 5;
+	private static final byte[] CODE = new byte[256];
+	
+	static{
+		Arrays.fill(CODE, (byte)N); //anything that is not A, T, C, or G is treated as N
+		CODE['A'] = CODE['a'] = A;
+		CODE['C'] = CODE['c'] = C;
+		CODE['G'] = CODE['g'] = G;
+		CODE['T'] = CODE['t'] = T;
+	}
+	
+	private long[] bits = new long[0];
+	private long[] nMask = new long[0];
+	private int start;
+	private int length;
+	private boolean reversed;
+	private boolean complemented;
+	
+	public static int code(char c){
+		return CODE[c & 0xFF];
+	}
+	
+	//encodes part of a byte array, reusing the arrays of this if they are large enough
+	public PackedSequence encode(byte[] arr, int offset, int n){
+		if(bits.length < (n + 31) >>> 5){
+			bits = new long[(n + 31) >>> 5];
+			nMask = new long[(n + 63) >>> 6];
+		}else{
+			Arrays.fill(bits, 0, (n + 31) >>> 5, 0L);
+			Arrays.fill(nMask, 0, (n + 63) >>> 6, 0L);
+		}
+		for(int i = 0; i < n; i++){
+			int c = CODE[arr[offset + i] & 0xFF];
+			if(c == N)
+				nMask[i >>> 6] |= 1L << i;
+			else
+				bits[i >>> 5] |= (long)c << ((i & 31) << 1);
+		}
+		start = 0;
+		length = n;
+		reversed = false;
+		complemented = false;
+		return this;
+	}
+	
+	//makes this a view of part of an encoding, which should not be a view itself
+	public PackedSequence view(PackedSequence o, int start, int length, boolean reversed, boolean complemented){
+		this.bits = o.bits;
+		this.nMask = o.nMask;
+		this.start = o.start + start;
+		this.length = length;
+		this.reversed = reversed;
+		this.complemented = complemented;
+		return this;
+	}
+	
+	public int length(){
+		return length;
+	}
+	
+	//the code of the base at i, which is always N for 'N'
+	public int code(int i){
+		int j = reversed ? start + length - 1 - i : start + i;
+		if((nMask[j >>> 6] & (1L << j)) != 0L)
+			return N;
+		int c = (int)(bits[j >>> 5] >>> ((j & 31) << 1)) & 3;
+		return complemented ? 3 - c : c;
+	}
+}
@@ -1,9 +1,11 @@
 
 public class Read{
 	//forward, reversed, index forward, and index reversed
-	public String[] readF, readR, readIF, readIR;
+	public FastQRecord readF, readR, readIF, readIR;
+	public int lane = 0; //which set of input files the read is from
+	public long index = 0; //position of the read in its input files
 	
-	public Read(String[] readF, String[] readR, String[] readIF, String[] readIR){
+	public Read(FastQRecord readF, FastQRecord readR, FastQRecord readIF, FastQRecord readIR){
 		this.readF = readF;
 		this.readR = readR;
 		this.readIF = readIF;
@@ -0,0 +1,43 @@
+public class ReadBatch{
+	//a batch of reads that goes through each stage of processing together, so each stage loops over many reads at once
+	//the state that is passed between the stages is kept in arrays, one element per read
+	//the sequences and qualities are not copied, since they are already slices of the large buffers that the reads were parsed from
+	public Read[] reads;
+	public int size = 0;
+	public boolean[] passed; //false once a read is undetermined
+	public int[] sample; //matched sample, or -1
+	public int[] barcodeEnd, enzymeEnd, barcodeEnd2, enzymeEnd2; //where the barcode and enzyme end in the forwards and reversed reads
+	public int[] trimmedQuality, removedAdapter; //number of reads in each pair that were quality trimmed or had adapters removed
+	public boolean[] merged;
+	
+	public ReadBatch(int capacity){
+		reads = new Read[capacity];
+		passed = new boolean[capacity];
+		sample = new int[capacity];
+		barcodeEnd = new int[capacity];
+		enzymeEnd = new int[capacity];
+		barcodeEnd2 = new int[capacity];
+		enzymeEnd2 = new int[capacity];
+		trimmedQuality = new int[capacity];
+		removedAdapter = new int[capacity];
+		merged = new boolean[capacity];
+	}
+	
+	public boolean isFull(){
+		return size == reads.length;
+	}
+	
+	public void add(Read read){
+		reads[size] = read;
+		passed[size] = true;
+		sample[size] = -1;
+		barcodeEnd[size] = -1;
+		enzymeEnd[size] = -1;
+		barcodeEnd2[size] = -1;
+		enzymeEnd2[size] = -1;
+		trimmedQuality[size] = 0;
+		removedAdapter[size] = 0;
+		merged[size] = false;
+		size++;
+	}
+}
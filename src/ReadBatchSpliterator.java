@@ -0,0 +1,63 @@
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+public class ReadBatchSpliterator implements Spliterator<ReadBatch>{
+	//groups the reads of another spliterator into batches
+	//splitting is left to the reads' spliterator, so the same amount of work is split off as when reads are processed one by one
+	private Spliterator<Read> reads;
+	private int batchSize;
+	private AllocationBudget allocation; //null if allocations are not measured
+	private AdaptiveBatchSize adaptive; //null if the reads are not split off in timed batches
+	
+	public ReadBatchSpliterator(Spliterator<Read> reads, int batchSize){
+		this(reads, batchSize, null, null);
+	}
+	
+	//the bytes allocated while getting the reads of each batch are counted as parsing
+	//the timed batches that the reads come from are only done once the reads are processed, so the processing is timed, not just the grouping
+	public ReadBatchSpliterator(Spliterator<Read> reads, int batchSize, AllocationBudget allocation, AdaptiveBatchSize adaptive){
+		this.reads = reads;
+		this.batchSize = batchSize;
+		this.allocation = allocation;
+		this.adaptive = adaptive;
+	}
+	
+	@Override
+	public int characteristics(){
+		return reads.characteristics() & ~(SIZED | SUBSIZED);
+	}
+	
+	//this is in reads, not batches, so the stream splits the reads the same way as before
+	@Override
+	public long estimateSize(){
+		return reads.estimateSize();
+	}
+	
+	@Override
+	public boolean tryAdvance(Consumer<? super ReadBatch> c){
+		long mark = allocation == null ? 0L : AllocationBudget.threadBytes();
+		ReadBatch batch = new ReadBatch(batchSize);
+		if(adaptive != null)
+			adaptive.deferEnds();
+		try{
+			while(!batch.isFull() && reads.tryAdvance(batch::add));
+			if(batch.size == 0)
+				return false;
+			if(allocation != null){
+				allocation.charge(AllocationBudget.PARSE, mark);
+				allocation.addReads(batch.size);
+			}
+			c.accept(batch);
+			return true;
+		}finally{
+			if(adaptive != null)
+				adaptive.endDeferred();
+		}
+	}
+	
+	@Override
+	public Spliterator<ReadBatch> trySplit(){
+		Spliterator<Read> split = reads.trySplit();
+		return split == null ? null : new ReadBatchSpliterator(split, batchSize, allocation, adaptive);
+	}
+}
@@ -1,14 +1,16 @@
-import java.io.BufferedReader;
 import java.util.Spliterator;
 import java.util.Spliterators;
 import java.util.function.Consumer;
 
 public class ReadSpliterator<T> implements Spliterator<T>{
 	private int batch;
-	private BufferedReader rF, rR, rIF, rIR;
+	private AdaptiveBatchSize adaptive = null; //if not null, then it chooses the batch size
+	private FastQPrefetcher rF, rR, rIF, rIR;
+	private long count = 0; //number of reads returned so far
 	
 	//ReadSpliterator's type is needs to be Read, or else bad stuff will happen
-	public ReadSpliterator(int batch, BufferedReader rF, BufferedReader rR, BufferedReader rIF, BufferedReader rIR){
+	//each file is read by its own prefetcher thread, so this only needs to pair up the records
+	public ReadSpliterator(int batch, FastQPrefetcher rF, FastQPrefetcher rR, FastQPrefetcher rIF, FastQPrefetcher rIR){
 		this.batch = batch;
 		this.rF = rF;
 		this.rR = rR;
@@ -16,6 +18,11 @@ public class ReadSpliterator<T> implements Spliterator<T>{
 		this.rIR = rIR;
 	}
 	
+	public ReadSpliterator(AdaptiveBatchSize adaptive, FastQPrefetcher rF, FastQPrefetcher rR, FastQPrefetcher rIF, FastQPrefetcher rIR){
+		this(adaptive.size(), rF, rR, rIF, rIR);
+		this.adaptive = adaptive;
+	}
+	
 	@Override
 	public int characteristics(){
 		return NONNULL | CONCURRENT | IMMUTABLE;
@@ -29,37 +36,29 @@ public class ReadSpliterator<T> implements Spliterator<T>{
 	@SuppressWarnings("unchecked")
 	@Override
 	public boolean tryAdvance(Consumer<? super T> c){
-		String[] nextF = new String[4];
-		String[] nextR = null;
-		String[] nextIF = null;
-		String[] nextIR = null;
+		FastQRecord nextF = null;
+		FastQRecord nextR = null;
+		FastQRecord nextIF = null;
+		FastQRecord nextIR = null;
 		
 		try{
-			for(int i = 0; i < 4; i++)
-				nextF[i] = rF.readLine();
-			if(rR != null){
-				nextR = new String[4];
-				for(int i = 0; i < 4; i++)
-					nextR[i] = rR.readLine();
-			}
-			if(rIF != null){
-				nextIF = new String[4];
-				for(int i = 0; i < 4; i++)
-					nextIF[i] = rIF.readLine();
-			}
-			if(rIR != null){
-				nextIR = new String[4];
-				for(int i = 0; i < 4; i++)
-					nextIR[i] = rIR.readLine();
-			}
-			if(nextF[3] == null || (rR != null && nextR[3] == null) || (rIF != null && nextIF[3] == null) || (rIR != null && nextIR[3] == null)){
+			nextF = rF.next();
+			if(rR != null)
+				nextR = rR.next();
+			if(rIF != null)
+				nextIF = rIF.next();
+			if(rIR != null)
+				nextIR = rIR.next();
+			if(nextF == null || (rR != null && nextR == null) || (rIF != null && nextIF == null) || (rIR != null && nextIR == null)){
 				return false;
 			}
 		}catch(Exception e){
 			UtilMethods.defaultExceptionHandler(null, e);
 		}
 		
-		c.accept((T)new Read(nextF, nextR, nextIF, nextIR));
+		Read read = new Read(nextF, nextR, nextIF, nextIR);
+		read.index = count++;
+		c.accept((T)read);
 		return true;
 	}
 	
@@ -69,11 +68,14 @@ public class ReadSpliterator<T> implements Spliterator<T>{
 		if(!tryAdvance(h)){
 			return null;
 		}
-		Read[] o = new Read[batch];
+		int size = adaptive == null ? batch : adaptive.size();
+		Read[] o = new Read[size];
 		int i = 0;
 		do{
 			o[i] = h.get();
-		}while(++i < batch && tryAdvance(h));
+		}while(++i < size && tryAdvance(h));
+		if(adaptive != null)
+			return adaptive.wrap(Spliterators.spliterator(o, 0, i, characteristics() | SIZED), i);
 		return Spliterators.spliterator(o, 0, i, characteristics() | SIZED);
 	}
 	
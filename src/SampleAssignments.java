@@ -0,0 +1,62 @@
+public class SampleAssignments{
+	//the sample of every read in a lane, found by matching the index reads before the reads themselves are routed
+	//0 = undetermined, otherwise the sample index + 1, in blocks so it can grow without copying
+	//each read takes one byte if there are at most 255 samples, two bytes if there are at most 65535 samples, and four bytes otherwise
+	private static final int BLOCK_BITS = 20;
+	private static final int BLOCK_MASK = (1 << BLOCK_BITS) - 1;
+	
+	private int width; //bytes per read
+	private volatile Object[] blocks = new Object[16]; //byte[], short[], or int[], depending on the width
+	
+	public SampleAssignments(int samples){
+		width = width(samples);
+	}
+	
+	//the number of bytes each read takes with this many samples
+	public static int width(int samples){
+		return samples <= 0xFF ? 1 : (samples <= 0xFFFF ? 2 : 4);
+	}
+	
+	public void set(long i, int sample){
+		Object block = block(i);
+		int j = (int)(i & BLOCK_MASK);
+		if(width == 1)
+			((byte[])block)[j] = (byte)(sample + 1);
+		else if(width == 2)
+			((short[])block)[j] = (short)(sample + 1);
+		else
+			((int[])block)[j] = sample + 1;
+	}
+	
+	//returns -1 for undetermined reads
+	public int get(long i){
+		int b = (int)(i >>> BLOCK_BITS);
+		Object[] curr = blocks;
+		if(b >= curr.length || curr[b] == null)
+			return -1;
+		int j = (int)(i & BLOCK_MASK);
+		if(width == 1)
+			return (((byte[])curr[b])[j] & 0xFF) - 1;
+		else if(width == 2)
+			return (((short[])curr[b])[j] & 0xFFFF) - 1;
+		else
+			return ((int[])curr[b])[j] - 1;
+	}
+	
+	private Object block(long i){
+		int b = (int)(i >>> BLOCK_BITS);
+		Object[] curr = blocks;
+		if(b < curr.length && curr[b] != null)
+			return curr[b];
+		synchronized(this){
+			if(b >= blocks.length){
+				Object[] next = new Object[Math.max(blocks.length * 2, b + 1)];
+				System.arraycopy(blocks, 0, next, 0, blocks.length);
+				blocks = next;
+			}
+			if(blocks[b] == null)
+				blocks[b] = width == 1 ? new byte[1 << BLOCK_BITS] : (width == 2 ? new short[1 << BLOCK_BITS] : new int[1 << BLOCK_BITS]);
+			return blocks[b];
+		}
+	}
+}
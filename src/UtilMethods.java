@@ -10,6 +10,8 @@ import java.util.Random;
 public class UtilMethods {
 	private static HashMap<Character, Character> complements = new HashMap<Character, Character>();
 	private static char[] bp = {'A', 'T', 'C', 'G', 'N'};
+	//reusable slices for reversed reads, so each thread only needs to grow them once
+	private static final ThreadLocal<ByteSlice[]> reversedScratch = ThreadLocal.withInitial(() -> new ByteSlice[]{new ByteSlice(new byte[0], 0, 0), new ByteSlice(new byte[0], 0, 0)});
 	
 	static{
 		//complements for each bp
@@ -48,7 +50,7 @@ public class UtilMethods {
 	}
 	
 	//count number of N bp
-	public static int countN(String s){
+	public static int countN(CharSequence s){
 		int count = 0;
 		for(int i = 0; i < s.length(); i++){
 			if(Character.toUpperCase(s.charAt(i)) == 'N'){
@@ -59,7 +61,7 @@ public class UtilMethods {
 	}
 	
 	//percentage of N bp
-	public static double percentN(String s){
+	public static double percentN(CharSequence s){
 		if(s.length() == 0)
 			return 0;
 		return (double)countN(s) / (double)s.length();
@@ -68,7 +70,7 @@ public class UtilMethods {
 	//expected number of bases that are wrong
 	//sum of all error percentages
 	//skips characters from start if offset > 0
-	public static double toError(String quality, int offset){
+	public static double toError(CharSequence quality, int offset){
 		double result = 0.0;
 		for(int i = offset; i < quality.length(); i++){
 			result += toError(quality.charAt(i));
@@ -83,7 +85,7 @@ public class UtilMethods {
 	
 	//average of quality scores
 	//skip characters from start if offset > 0
-	public static double toQScore(String quality, int offset){
+	public static double toQScore(CharSequence quality, int offset){
 		double result = 0.0;
 		for(int i = offset; i < quality.length(); i++){
 			result += toQScore(quality.charAt(i));
@@ -196,6 +198,16 @@ public class UtilMethods {
 		folder.delete();
 	}
 	
+	//split a comma separated list of paths (one for each lane) into files
+	public static File[] toFiles(String paths){
+		String[] split = paths.split(",");
+		File[] files = new File[split.length];
+		for(int i = 0; i < split.length; i++){
+			files[i] = new File(split[i]);
+		}
+		return files;
+	}
+	
 	//make a string that consists of a bunch of one character
 	public static String makeStr(char c, int n){
 		char[] result = new char[n];
@@ -203,25 +215,31 @@ public class UtilMethods {
 		return new String(result);
 	}
 	
+	//the max number of edits of a match, where edit is either the max number of edits, or the negative of the max fraction of the pattern's length
+	public static int maxEdits(double edit, int length){
+		return (int)(edit < 0.0 ? (-edit * length) : edit);
+	}
+	
 	//generate masks for patterns that will not change
 	//this can be done once and the pattern can be used for every single text that is searched
-	public static HashMap<Character, BitVector> genPatternMasks(String b, boolean indels, boolean wildcard){
-		HashMap<Character, BitVector> res = new HashMap<Character, BitVector>();
-		for(int i = 0; i < bp.length; i++){
-			if(wildcard && bp[i] == 'N'){
-				res.put(bp[i], new BitVector(b.length() + (indels ? 0 : 1)).set(0, b.length()));
+	//the masks are indexed by the codes in PackedSequence
+	public static BitVector[] genPatternMasks(CharSequence b, boolean indels, boolean wildcard){
+		BitVector[] res = new BitVector[PackedSequence.CODES];
+		for(int i = 0; i < res.length; i++){
+			if(wildcard && i == PackedSequence.N){
+				res[i] = new BitVector(b.length() + (indels ? 0 : 1)).set(0, b.length());
 			}else{
-				res.put(bp[i], new BitVector(b.length() + (indels ? 0 : 1)));
+				res[i] = new BitVector(b.length() + (indels ? 0 : 1));
 			}
 		}
 		for(int i = 0; i < b.length(); i++){
-			char c = Character.toUpperCase(b.charAt(i));
-			if(wildcard && c == 'N'){
-				for(int j = 0; j < bp.length; j++){
-					res.get(bp[j]).set(i);
+			int c = PackedSequence.code(b.charAt(i));
+			if(wildcard && c == PackedSequence.N){
+				for(int j = 0; j < res.length; j++){
+					res[j].set(i);
 				}
 			}else{
-				res.get(c).set(i);
+				res[c].set(i);
 			}
 		}
 		return res;
@@ -231,13 +249,14 @@ public class UtilMethods {
 	//returns a list of string ending positions and other information
 	//set minOverlap to Integer.MAX_VALUE to make sure that the match only appears within the string to be searched
 	//supports insertions, deletions, and substitutions, or just substitutions only
-	public static ArrayList<Match> searchWithN(String a, int s, int e, String b, double edit, boolean indels, boolean bestOnly, int minOverlap, boolean wildcard, HashMap<Character, BitVector> pm){
-		if(b.isEmpty())
+	//the string to be searched is encoded, so the mask for each position is found without looking at characters
+	public static ArrayList<Match> searchWithN(PackedSequence a, int s, int e, CharSequence b, double edit, boolean indels, boolean bestOnly, int minOverlap, boolean wildcard, BitVector[] pm){
+		if(b.length() == 0)
 			return new ArrayList<Match>(Arrays.asList(new Match(0, 0, 0)));
 		
 		minOverlap = Math.min(minOverlap, b.length());
-		a = makeStr('#', b.length() - minOverlap) + a;
-		e += b.length() - minOverlap;
+		int pad = b.length() - minOverlap; //a is treated as if it starts with this many '#', which match anything
+		e += pad;
 		int min = Integer.MAX_VALUE;
 		ArrayList<Match> res = new ArrayList<Match>();
 		
@@ -247,7 +266,7 @@ public class UtilMethods {
 			BitVector allSet = new BitVector(b.length()).set(0, b.length());
 			int dist = b.length();
 			for(int i = s; i < e; i++){
-				BitVector m = a.charAt(i) == '#' ? allSet : pm.get(Character.toUpperCase(a.charAt(i)));
+				BitVector m = i < pad ? allSet : pm[a.code(i - pad)];
 				BitVector d0 = new BitVector(b.length()).or(m).and(vp).add(vp).xor(vp).or(m).or(vn);
 				BitVector hp = new BitVector(b.length()).or(d0).or(vp).not().or(vn);
 				BitVector hn = new BitVector(b.length()).or(vp).and(d0);
@@ -260,9 +279,9 @@ public class UtilMethods {
 					dist--;
 				}
 				
-				int index = i - (b.length() - minOverlap);
+				int index = i - pad;
 				int length = Math.min(index + 1, b.length());
-				if(dist <= (edit < 0.0 ? (-edit * length) : edit) && length >= minOverlap){
+				if(dist <= maxEdits(edit, length) && length >= minOverlap){
 					if(!bestOnly || dist <= min){
 						res.add(new Match(index, dist, length));
 						min = dist;
@@ -273,7 +292,7 @@ public class UtilMethods {
 			if(e - s < b.length())
 				return new ArrayList<Match>();
 			
-			int totalEdit = (int)(edit < 0.0 ? (-edit * b.length()) : edit);
+			int totalEdit = maxEdits(edit, b.length());
 			BitVector[] r = new BitVector[totalEdit + 1];
 			for(int i = 0; i <= totalEdit; i++){
 				r[i] = new BitVector(b.length() + 1).set(0);
@@ -284,19 +303,19 @@ public class UtilMethods {
 				boolean found = false;
 				for(int j = 0; j <= totalEdit; j++){
 					if(j == 0){
-						if(a.charAt(i) != '#')
-							r[0].and(pm.get(Character.toUpperCase(a.charAt(i))));
+						if(i >= pad)
+							r[0].and(pm[a.code(i - pad)]);
 					}else{
 						BitVector temp = new BitVector(b.length() + 1).or(r[j]);
-						(a.charAt(i) == '#' ? r[j] : r[j].and(pm.get(Character.toUpperCase(a.charAt(i))))).or(old);
+						(i < pad ? r[j] : r[j].and(pm[a.code(i - pad)])).or(old);
 						old = temp;
 					}
 					r[j].leftShift().set(0);
 					
 					if(!found && r[j].get(b.length())){
-						int index = i - (b.length() - minOverlap);
+						int index = i - pad;
 						int length = Math.min(index + 1, b.length());
-						if(j <= (edit < 0.0 ? (-edit * length) : edit) && length >= minOverlap){
+						if(j <= maxEdits(edit, length) && length >= minOverlap){
 							if(!bestOnly || j <= min){
 								res.add(new Match(index, j, length));
 								min = j;
@@ -322,11 +341,106 @@ public class UtilMethods {
 		return res;
 	}
 	
+	//pattern masks for a group of patterns with the same length, packed side by side with length + 1 bits for each pattern
+	//each pattern's bits are the same as the bits from genPatternMasks
+	public static long[] genMultiPatternMasks(ArrayList<String> b, boolean wildcard){
+		long[] res = new long[PackedSequence.CODES];
+		int width = b.get(0).length() + 1;
+		for(int p = 0; p < b.size(); p++){
+			BitVector[] pm = genPatternMasks(b.get(p), false, wildcard);
+			for(int c = 0; c < res.length; c++)
+				res[c] |= pm[c].getChunk(0) << (p * width);
+		}
+		return res;
+	}
+	
+	//same as searchWithN with bestOnly set to false, but for every pattern in a group at the same time
+	//each pattern is in its own lane of bits, and the lanes are kept apart by clearing the extra bit of each lane before adding or shifting
+	//res gets the matches for each pattern, in the same order as the group
+	public static void searchWithNMulti(PackedSequence a, int s, int e, int length, int count, double edit, boolean indels, int minOverlap, long[] pm, ArrayList<Match>[] res){
+		int width = length + 1;
+		long first = 0L; //first bit of each lane
+		long all = 0L; //bits of the patterns in each lane, without the extra bits
+		for(int p = 0; p < count; p++){
+			first |= 1L << (p * width);
+			all |= ((1L << length) - 1L) << (p * width);
+			res[p] = new ArrayList<Match>();
+		}
+		
+		minOverlap = Math.min(minOverlap, length);
+		int pad = length - minOverlap; //a is treated as if it starts with this many '#', which match anything
+		e += pad;
+		
+		if(indels){ //Myer's algorithm
+			long vn = 0L;
+			long vp = all;
+			int[] dist = new int[count];
+			Arrays.fill(dist, length);
+			for(int i = s; i < e; i++){
+				long m = i < pad ? all : pm[a.code(i - pad)];
+				long d0 = ((((m & vp) & all) + (vp & all)) ^ vp) | m | vn;
+				long hp = vn | ~(d0 | vp);
+				long hn = vp & d0;
+				long hpShift = (hp & all) << 1;
+				vp = ((hn & all) << 1) | ~(d0 | hpShift);
+				vn = d0 & hpShift;
+				
+				int index = i - pad;
+				int matchLength = Math.min(index + 1, length);
+				for(int p = 0; p < count; p++){
+					int last = p * width + length - 1;
+					if(((hp >>> last) & 1L) != 0L){
+						dist[p]++;
+					}else if(((hn >>> last) & 1L) != 0L){
+						dist[p]--;
+					}
+					if(dist[p] <= maxEdits(edit, matchLength) && matchLength >= minOverlap)
+						res[p].add(new Match(index, dist[p], matchLength));
+				}
+			}
+		}else{ //Bitap algorithm
+			if(e - s < length)
+				return;
+			
+			int totalEdit = maxEdits(edit, length);
+			long[] r = new long[totalEdit + 1];
+			Arrays.fill(r, first);
+			long end = first << length; //bit after the pattern in each lane, which is set when the whole pattern matches
+			
+			for(int i = s; i < e; i++){
+				long old = r[0];
+				long found = 0L;
+				for(int j = 0; j <= totalEdit; j++){
+					if(j == 0){
+						if(i >= pad)
+							r[0] &= pm[a.code(i - pad)];
+					}else{
+						long temp = r[j];
+						r[j] = (i < pad ? r[j] : r[j] & pm[a.code(i - pad)]) | old;
+						old = temp;
+					}
+					r[j] = (r[j] << 1) | first;
+					
+					long hits = r[j] & end & ~found;
+					if(hits != 0L){
+						int index = i - pad;
+						int matchLength = Math.min(index + 1, length);
+						for(int p = 0; p < count; p++){
+							if((hits & (1L << (p * width + length))) != 0L && j <= maxEdits(edit, matchLength) && matchLength >= minOverlap)
+								res[p].add(new Match(index, j, matchLength));
+						}
+						found |= hits;
+					}
+				}
+			}
+		}
+	}
+	
 	//posterior probability based matching
 	//supports one or two sequences with probability information
 	//finds the best match based on the highest probability of a match that is better than the random model
-	public static ArrayList<Match> searchWithProb(String a, int s, int e, String qA, String b, String qB, double prior, int minOverlap, boolean wildcard){
-		if(b.isEmpty())
+	public static ArrayList<Match> searchWithProb(CharSequence a, int s, int e, CharSequence qA, CharSequence b, CharSequence qB, double prior, int minOverlap, boolean wildcard){
+		if(b.length() == 0)
 			return new ArrayList<Match>(Arrays.asList(new Match(0, 0, 0)));
 		
 		double bestProb = 0.0;
@@ -404,6 +518,27 @@ public class UtilMethods {
 		return new String(arr);
 	}
 	
+	//reverse a slice into a new array
+	public static ByteSlice reverse(ByteSlice s){
+		byte[] arr = new byte[s.length];
+		for(int i = 0; i < arr.length; i++){
+			arr[i] = s.arr[s.offset + s.length - 1 - i];
+		}
+		return new ByteSlice(arr, 0, arr.length);
+	}
+	
+	//reverse a slice into another slice, whose array is only replaced if it is too small
+	private static ByteSlice reverse(ByteSlice s, ByteSlice res){
+		if(res.arr.length < s.length)
+			res.arr = new byte[Math.max(s.length, res.arr.length * 2)];
+		res.offset = 0;
+		res.length = s.length;
+		for(int i = 0; i < s.length; i++){
+			res.arr[i] = s.arr[s.offset + s.length - 1 - i];
+		}
+		return res;
+	}
+	
 	//find the complement of a string of A, T, C, G, and N
 	public static String complement(String s){
 		char[] result = new char[s.length()];
@@ -438,17 +573,28 @@ public class UtilMethods {
 		return new String(arr);
 	}
 	
+	//find the reverse complement of a slice of A, T, C, G, and N
+	public static ByteSlice reverseComplement(ByteSlice s){
+		byte[] arr = new byte[s.length];
+		for(int i = 0; i < arr.length; i++){
+			arr[i] = (byte)complement((char)s.arr[s.offset + s.length - 1 - i]);
+		}
+		return new ByteSlice(arr, 0, arr.length);
+	}
+	
 	//merge two reads
 	//increase quality if two base pairs are equal
 	//decrease quality if two base pairs are not equal
-	public static String[] mergeReads(String s1, String q1, String s2, String q2, double editMax, double prob, int minOverlap, boolean wildcard){
-		s2 = reverseComplement(s2);
-		q2 = reverse(q2);
+	public static ByteSlice[] mergeReads(FastQRecord r1, FastQRecord r2, double editMax, double prob, int minOverlap, boolean wildcard){
+		ByteSlice s1 = r1.sequence;
+		ByteSlice q1 = r1.quality;
+		ByteSlice s2 = reverseComplement(r2.sequence);
+		ByteSlice q2 = reverse(r2.quality);
 		
 		int start = -1;
 		
 		if(prob < 0.0){ //find match with least edit distance
-			ArrayList<Match> matches = searchWithN(s2, 0, s2.length(), s1, editMax, false, false, minOverlap, wildcard, genPatternMasks(s1, false, wildcard));
+			ArrayList<Match> matches = searchWithN(r2.packed(true, true), 0, s2.length(), s1, editMax, false, false, minOverlap, wildcard, genPatternMasks(s1, false, wildcard));
 			int minEdits = Integer.MAX_VALUE;
 			int maxLength = 0;
 			
@@ -466,36 +612,42 @@ public class UtilMethods {
 		}
 		
 		if(start == -1){
-			return new String[]{s1 + s2, q1 + q2};
-		}else{ //reconstruct the new, merged string
-			StringBuilder sb1 = new StringBuilder(); //DNA data
-			StringBuilder sb2 = new StringBuilder(); //quality
-			for(int i = 0; i < Math.max(s1.length(), start + s2.length()); i++){
+			return new ByteSlice[]{s1.concat(s2), q1.concat(q2)};
+		}else{ //reconstruct the new, merged sequence
+			byte[] b1 = new byte[Math.max(s1.length(), start + s2.length())]; //DNA data
+			byte[] b2 = new byte[b1.length]; //quality
+			for(int i = 0; i < b1.length; i++){
 				if(i < start){
-					sb1.append(s1.charAt(i));
-					sb2.append(q1.charAt(i));
+					b1[i] = s1.byteAt(i);
+					b2[i] = q1.byteAt(i);
 				}else if(i < Math.min(s1.length(), start + s2.length())){
 					if((wildcard && (Character.toUpperCase(s1.charAt(i)) == 'N' || Character.toUpperCase(s2.charAt(i - start)) == 'N')) || Character.toUpperCase(s1.charAt(i)) == Character.toUpperCase(s2.charAt(i - start))){
-						sb1.append(s1.charAt(i));
-						sb2.append(toQualityChar(sameError(toError(q1.charAt(i)), toError(q2.charAt(i - start)))));
+						b1[i] = s1.byteAt(i);
+						b2[i] = (byte)toQualityChar(sameError(toError(q1.charAt(i)), toError(q2.charAt(i - start))));
 					}else{
-						sb1.append(toError(q1.charAt(i)) < toError(q2.charAt(i - start)) ? s1.charAt(i) : s2.charAt(i - start));
-						sb2.append(toQualityChar(differentError(toError(q1.charAt(i)), toError(q2.charAt(i - start)))));
+						b1[i] = toError(q1.charAt(i)) < toError(q2.charAt(i - start)) ? s1.byteAt(i) : s2.byteAt(i - start);
+						b2[i] = (byte)toQualityChar(differentError(toError(q1.charAt(i)), toError(q2.charAt(i - start))));
 					}
 				}else if(s1.length() < start + s2.length()){
-					sb1.append(s2.charAt(i - start));
-					sb2.append(q2.charAt(i - start));
+					b1[i] = s2.byteAt(i - start);
+					b2[i] = q2.byteAt(i - start);
 				}else{
-					sb1.append(s1.charAt(i));
-					sb2.append(q1.charAt(i));
+					b1[i] = s1.byteAt(i);
+					b2[i] = q1.byteAt(i);
 				}
 			}
-			return new String[]{sb1.toString(), sb2.toString()};
+			return new ByteSlice[]{new ByteSlice(b1, 0, b1.length), new ByteSlice(b2, 0, b2.length)};
 		}
 	}
 	
-	//remove adapters from sequence and quality strings
-	public static String[] removeAdapters(String s, String q, ArrayList<Adapter> adapters, double editMax, int minOverlap, int maxOffset, boolean indels, double prob, boolean wildcard, ArrayList<HashMap<Character, BitVector>> pm){
+	//remove adapters from the sequence and quality of a record, by narrowing them in place
+	public static void removeAdapters(FastQRecord r, ArrayList<Adapter> adapters, double editMax, int minOverlap, int maxOffset, boolean indels, double prob, boolean wildcard, ArrayList<BitVector[]> pm){
+		ByteSlice s = r.sequence;
+		ByteSlice q = r.quality;
+		PackedSequence ps = prob < 0.0 ? r.packed() : null; //the encoded sequence and its reverse are used by searchWithN
+		PackedSequence rps = null;
+		ByteSlice rs = null; //reversed sequence and quality for searchWithProb, only made once if there are 3' adapters
+		ByteSlice rq = null;
 		int bestLength = 0;
 		int bestEdit = Integer.MAX_VALUE;
 		boolean bestStart = false;
@@ -503,19 +655,26 @@ public class UtilMethods {
 		
 		for(int i = 0; i < adapters.size(); i++){
 			Adapter a = adapters.get(i);
+			if(!a.isStart && prob < 0.0 && rps == null){
+				rps = r.packed(true, false);
+			}else if(!a.isStart && prob >= 0.0 && rs == null){
+				ByteSlice[] scratch = reversedScratch.get();
+				rs = reverse(s, scratch[0]);
+				rq = reverse(q, scratch[1]);
+			}
 			
 			ArrayList<Match> matches;
 			if(a.anchored){
 				if(prob < 0.0)
-					matches = searchWithN(a.isStart ? s : reverse(s), 0, Math.min(a.str.length() + (prob < 0.0 && indels ? (editMax < 0.0 ? (int)(-editMax * a.str.length()) : (int)editMax) : 0), s.length()), a.isStart ? a.str : reverse(a.str), editMax, indels, true, Integer.MAX_VALUE, wildcard, pm.get(i));
+					matches = searchWithN(a.isStart ? ps : rps, 0, Math.min(a.str.length() + (prob < 0.0 && indels ? (editMax < 0.0 ? (int)(-editMax * a.str.length()) : (int)editMax) : 0), s.length()), a.isStart ? a.str : a.reversedStr, editMax, indels, true, Integer.MAX_VALUE, wildcard, pm.get(i));
 				else
-					matches = searchWithProb(a.isStart ? s : reverse(s), 0, Math.min(a.str.length() + (prob < 0.0 && indels ? (editMax < 0.0 ? (int)(-editMax * a.str.length()) : (int)editMax) : 0), s.length()), a.isStart ? q : reverse(q), a.isStart ? a.str : reverse(a.str), null, prob, Integer.MAX_VALUE, wildcard);
+					matches = searchWithProb(a.isStart ? s : rs, 0, Math.min(a.str.length() + (prob < 0.0 && indels ? (editMax < 0.0 ? (int)(-editMax * a.str.length()) : (int)editMax) : 0), s.length()), a.isStart ? q : rq, a.isStart ? a.str : a.reversedStr, null, prob, Integer.MAX_VALUE, wildcard);
 			}else{
 				ArrayList<Match> tempMatches = null;
 				if(prob < 0.0)
-					tempMatches = searchWithN(a.isStart ? s : reverse(s), 0, Math.min(maxOffset + a.str.length() + (prob < 0.0 && indels ? (editMax < 0.0 ? (int)(-editMax * a.str.length()) : (int)editMax) : 0), s.length()), a.isStart ? a.str : reverse(a.str), editMax, indels, false, minOverlap, wildcard, pm.get(i));
+					tempMatches = searchWithN(a.isStart ? ps : rps, 0, Math.min(maxOffset + a.str.length() + (prob < 0.0 && indels ? (editMax < 0.0 ? (int)(-editMax * a.str.length()) : (int)editMax) : 0), s.length()), a.isStart ? a.str : a.reversedStr, editMax, indels, false, minOverlap, wildcard, pm.get(i));
 				else
-					tempMatches = searchWithProb(a.isStart ? s : reverse(s), 0, Math.min(maxOffset + a.str.length() + (prob < 0.0 && indels ? (editMax < 0.0 ? (int)(-editMax * a.str.length()) : (int)editMax) : 0), s.length()), a.isStart ? q : reverse(q), a.isStart ? a.str : reverse(a.str), null, prob, minOverlap, wildcard);
+					tempMatches = searchWithProb(a.isStart ? s : rs, 0, Math.min(maxOffset + a.str.length() + (prob < 0.0 && indels ? (editMax < 0.0 ? (int)(-editMax * a.str.length()) : (int)editMax) : 0), s.length()), a.isStart ? q : rq, a.isStart ? a.str : a.reversedStr, null, prob, minOverlap, wildcard);
 				matches = new ArrayList<Match>();
 				
 				int minEdit = Integer.MAX_VALUE;
@@ -544,23 +703,20 @@ public class UtilMethods {
 		}
 		
 		if(bestMatch != null){
-			if(bestStart){
-				s = s.substring(bestMatch.end + 1);
-				q = q.substring(bestMatch.end + 1);
-			}else{
-				s = s.substring(0, s.length() - 1 - bestMatch.end); //reverse the index to get the correct index
-				q = q.substring(0, q.length() - 1 - bestMatch.end);
-			}
+			if(bestStart)
+				r.trim(bestMatch.end + 1, s.length());
+			else
+				r.trim(0, s.length() - 1 - bestMatch.end); //reverse the index to get the correct index
 		}
-		
-		return new String[]{s, q};
 	}
 	
-	//quality trim method 1
-	public static String[] qualityTrim1(String s, String q, int minQuality, boolean trimLeft, int length){
+	//quality trim method 1, narrows the sequence and quality of the record in place
+	public static void qualityTrim1(FastQRecord r, int minQuality, boolean trimLeft, int length){
 		if(minQuality == 0){
-			return new String[]{s, q};
+			return;
 		}
+		ByteSlice s = r.sequence;
+		ByteSlice q = r.quality;
 		
 		for(int i = trimLeft ? 0 : s.length() - 1; trimLeft ? i < s.length() : i >= 0; i += trimLeft ? 1 : -1){
 			int count = 0;
@@ -574,21 +730,23 @@ public class UtilMethods {
 				}
 			}
 			if(avg / count >= minQuality){ //trimming is complete as soon as the average exceeds the threshold
-				if(trimLeft){
-					return new String[]{s.substring(i), q.substring(i)};
-				}else{
-					return new String[]{s.substring(0, i + 1), q.substring(0, i + 1)};
-				}
+				if(trimLeft)
+					r.trim(i, s.length());
+				else
+					r.trim(0, i + 1);
+				return;
 			}
 		}
-		return new String[]{"", ""};
+		r.trim(0, 0);
 	}
 	
-	//quality trim method 2
-	public static String[] qualityTrim2(String s, String q, int minQuality, boolean trimLeft, int length){
+	//quality trim method 2, narrows the sequence and quality of the record in place
+	public static void qualityTrim2(FastQRecord r, int minQuality, boolean trimLeft, int length){
 		if(minQuality == 0){
-			return new String[]{s, q};
+			return;
 		}
+		ByteSlice s = r.sequence;
+		ByteSlice q = r.quality;
 		
 		long count = 0l;
 		for(int i = trimLeft ? 0 : s.length() - 1; trimLeft ? i < s.length() : i >= 0; i += trimLeft ? 1 : -1){
@@ -600,21 +758,22 @@ public class UtilMethods {
 				count -= (length == Integer.MAX_VALUE || (i + length) >= s.length()) ? 0 : (toQScore(q.charAt(i + length)) - minQuality);
 			count += toQScore(q.charAt(i)) - minQuality; //add next element
 			if(count >= 0l){
-				if(trimLeft){
-					return new String[]{s.substring(i), q.substring(i)};
-				}else{
-					return new String[]{s.substring(0, i + 1), q.substring(0, i + 1)};
-				}
+				if(trimLeft)
+					r.trim(i, s.length());
+				else
+					r.trim(0, i + 1);
+				return;
 			}
 		}
-		return new String[]{"", ""};
+		r.trim(0, 0);
 	}
 	
-	//trim N based on a percentage from both sides of a read
-	public static String[] trimN(String s, String q, double maxPercent){
+	//trim N based on a percentage from both sides of a read, narrows the sequence and quality of the record in place
+	public static void trimN(FastQRecord r, double maxPercent){
 		if(maxPercent > 1.0)
-			return new String[]{s, q};
+			return;
 		
+		ByteSlice s = r.sequence;
 		int bestIndex = -1;
 		int count = 0;
 		double bestPercent = 0.0;
@@ -637,14 +796,14 @@ public class UtilMethods {
 			}
 		}
 		
-		if(prevN) //if read is all N
-			return new String[]{"", ""};
-		
-		if(bestIndex != -1){
-			s = s.substring(bestIndex);
-			q = q.substring(bestIndex);
+		if(prevN){ //if read is all N
+			r.trim(0, 0);
+			return;
 		}
 		
+		if(bestIndex != -1)
+			r.trim(bestIndex, s.length());
+		
 		//reverse of the above
 		bestIndex = -1;
 		count = 0;
@@ -668,12 +827,8 @@ public class UtilMethods {
 			}
 		}
 		
-		if(bestIndex != -1){
-			s = s.substring(0, bestIndex + 1);
-			q = q.substring(0, bestIndex + 1);
-		}
-		
-		return new String[]{s, q};
+		if(bestIndex != -1)
+			r.trim(0, bestIndex + 1);
 	}
 	
 	public static String randSeq(Random r, int length){